@@ -4,9 +4,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.SplittableRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,6 +38,21 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The number of cards from which set searches are split between parallel workers (0 to always search sequentially)
+     */
+    public final int parallelSearchThreshold;
+
+    /**
+     * The maximum number of legal sets in the deck for which a catalogue of all of them is kept in memory
+     */
+    public final int setCatalogueMaxSets;
+
+    /**
+     * The directory of the on-disk catalogues of larger decks (empty to never keep one on disk)
+     */
+    public final String setCatalogueDirectory;
+
     /**
      * The number of human players in the game.
      */
@@ -66,6 +83,12 @@ public class Config {
      */
     public final long turnTimeoutWarningMillis;
 
+    /**
+     * The number of milliseconds between updates of the timer display, and between updates during the warning
+     */
+    public final long timerDisplayMillis;
+    public final long timerWarningDisplayMillis;
+
     /**
      * The number of milliseconds a player gets frozen for when he scores a point
      */
@@ -81,6 +104,21 @@ public class Config {
      */
     public final long tableDelayMillis;
 
+    /**
+     * The maximum number of milliseconds a key press waits for the dealer to finish changing the table
+     */
+    public final long tokenWaitMillis;
+
+    /**
+     * The number of worker threads checking players' set requests (0 to check them on the dealer thread)
+     */
+    public final int claimValidationThreads;
+
+    /**
+     * The seed of the dealer's random draws (random unless set, so a game can be replayed from the logged seed)
+     */
+    public final long randomSeed;
+
     /**
      * The number of milliseconds to pause at the end of the game before closing
      */
@@ -175,7 +213,20 @@ public class Config {
     }
 
     public Config(Logger logger, String configFilename) {
-        this(logger, loadProperties(configFilename, logger));
+        this(logger, withCatalogueDirectory(loadProperties(configFilename, logger), configFilename));
+    }
+
+    /**
+     * Defaults the catalogue directory to the directory of the configuration file.
+     */
+    private static Properties withCatalogueDirectory(Properties properties, String filename) {
+        try {
+            Path directory = Paths.get(filename).getParent();
+            properties.putIfAbsent("SetCatalogueDirectory", directory == null ? "." : directory.toString());
+        } catch (InvalidPathException ignored) {
+            properties.putIfAbsent("SetCatalogueDirectory", ".");
+        }
+        return properties;
     }
 
     public Config(Logger logger, Properties properties) {
@@ -195,6 +246,9 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        parallelSearchThreshold = Integer.parseInt(properties.getProperty("ParallelSearchThreshold", "243"));
+        setCatalogueMaxSets = Integer.parseInt(properties.getProperty("SetCatalogueMaxSets", "100000"));
+        setCatalogueDirectory = properties.getProperty("SetCatalogueDirectory", "").trim();
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
@@ -204,9 +258,15 @@ public class Config {
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
+        timerDisplayMillis = Math.max(1, (long) (Double.parseDouble(properties.getProperty("TimerDisplaySeconds", "1")) * 1000.0));
+        timerWarningDisplayMillis = Math.max(1, (long) (Double.parseDouble(properties.getProperty("TimerWarningDisplaySeconds", "0.01")) * 1000.0));
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        tokenWaitMillis = (long) (Double.parseDouble(properties.getProperty("TokenWaitSeconds", "1")) * 1000.0);
+        claimValidationThreads = Integer.parseInt(properties.getProperty("ClaimValidationThreads", "0"));
+        String seed = properties.getProperty("RandomSeed", "").trim();
+        randomSeed = seed.isEmpty() ? new SplittableRandom().nextLong() : Long.parseLong(seed);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
         // ui settings
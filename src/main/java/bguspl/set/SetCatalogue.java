@@ -0,0 +1,258 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * A catalogue of every legal set in the deck. Every card has the list of the sets that contain it, so finding the sets
+ * within a group of cards (e.g. the table or the deck) is a subset test per set rather than a combinatorial search.
+ * A mask of card ids has bit c % 64 of entry c / 64 set iff card c is in it.
+ * A catalogue is either built in memory, where each set also has a mask of its cards, or mapped read-only from a
+ * file generated once per featureSize and featureCount (see map).
+ */
+public class SetCatalogue {
+
+    /**
+     * The file format: a header of MAGIC, VERSION, featureSize, featureCount and the number of sets, then
+     * cardSetsStart, cardSets and sets as big-endian ints.
+     */
+    private static final int MAGIC = 0x53455443;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 5;
+
+    /**
+     * The number of cards in a set, and of longs in a mask of card ids.
+     */
+    private final int setSize;
+    private final int words;
+
+    /**
+     * The number of sets, and the sorted card ids of set s at [s * setSize, (s + 1) * setSize).
+     */
+    private final int size;
+    private final IntBuffer sets;
+
+    /**
+     * The mask of set s at [s * words, (s + 1) * words), or null for a mapped catalogue.
+     */
+    private final long[] masks;
+
+    /**
+     * The ids of the sets that contain card c are cardSets[cardSetsStart[c]..cardSetsStart[c + 1]), increasing.
+     */
+    private final IntBuffer cardSetsStart;
+    private final IntBuffer cardSets;
+
+    /**
+     * Builds a catalogue in memory.
+     *
+     * @param deckSize - the number of card ids.
+     * @param setSize  - the number of cards in a set.
+     * @param sets     - the sorted card ids of every legal set, one set after the other.
+     * @param size     - the number of sets.
+     */
+    public SetCatalogue(int deckSize, int setSize, int[] sets, int size) {
+        this(deckSize, setSize, size, IntBuffer.wrap(sets), IntBuffer.allocate(deckSize + 1), IntBuffer.allocate(size * setSize),
+                new long[size * maskLength(deckSize)]);
+
+        int words = maskLength(deckSize);
+        int[] start = cardSetsStart.array();
+        for (int i = 0; i < size * setSize; ++i) {
+            int card = sets[i];
+            masks[i / setSize * words + card / Long.SIZE] |= 1L << card;
+            start[card + 1]++;
+        }
+        for (int card = 0; card < deckSize; ++card)
+            start[card + 1] += start[card];
+        int[] next = start.clone();
+        for (int i = 0; i < size * setSize; ++i)
+            cardSets.put(next[sets[i]]++, i / setSize);
+    }
+
+    private SetCatalogue(int deckSize, int setSize, int size, IntBuffer sets, IntBuffer cardSetsStart, IntBuffer cardSets, long[] masks) {
+        this.setSize = setSize;
+        this.words = maskLength(deckSize);
+        this.size = size;
+        this.sets = sets;
+        this.cardSetsStart = cardSetsStart;
+        this.cardSets = cardSets;
+        this.masks = masks;
+    }
+
+    /**
+     * Maps a catalogue file read-only, generating the file first if it does not exist (or is not a valid catalogue
+     * of this deck). A generated file is written to a temporary file which is then moved into place.
+     *
+     * @param file         - the catalogue file.
+     * @param featureSize  - the number of cards in a set.
+     * @param featureCount - the number of features.
+     * @param size         - the number of legal sets in the deck.
+     * @param generator    - passes every legal set of the deck (sorted card ids) to the given sink.
+     * @return - the mapped catalogue.
+     * @throws IOException - if the file cannot be read or generated.
+     */
+    public static SetCatalogue map(Path file, int featureSize, int featureCount, int size,
+                                   Consumer<Util.SetSink> generator) throws IOException {
+        int deckSize = (int) Math.pow(featureSize, featureCount);
+        long bytes = (long) Integer.BYTES * (HEADER_INTS + deckSize + 1 + 2L * size * featureSize);
+        if (bytes > Integer.MAX_VALUE) throw new IOException("catalogue of " + size + " sets is too large to map");
+
+        if (!isValid(file, featureSize, featureCount, size, bytes)) {
+            Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                generate(temporary, featureSize, featureCount, deckSize, size, (int) bytes, generator);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            IntBuffer ints = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes).asIntBuffer();
+            int cardSetsStart = HEADER_INTS + deckSize + 1, setsLength = size * featureSize;
+            return new SetCatalogue(deckSize, featureSize, size,
+                    slice(ints, cardSetsStart + setsLength, setsLength), slice(ints, HEADER_INTS, deckSize + 1),
+                    slice(ints, cardSetsStart, setsLength), null);
+        }
+    }
+
+    /**
+     * @return - the name of the catalogue file for a deck.
+     */
+    public static String fileName(int featureSize, int featureCount) {
+        return "sets-" + featureSize + "x" + featureCount + ".catalogue";
+    }
+
+    private static IntBuffer slice(IntBuffer ints, int offset, int length) {
+        IntBuffer duplicate = ints.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    private static boolean isValid(Path file, int featureSize, int featureCount, int size, long bytes) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) != bytes) return false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * Integer.BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+            header.flip();
+            return header.remaining() == HEADER_INTS * Integer.BYTES && header.getInt() == MAGIC && header.getInt() == VERSION
+                    && header.getInt() == featureSize && header.getInt() == featureCount && header.getInt() == size;
+        }
+    }
+
+    /**
+     * Writes a catalogue file. In a full deck every card is in the same number of sets (shifting the values of a
+     * feature maps sets to sets), so the per card lists have a fixed length and are filled as the sets stream in.
+     */
+    private static void generate(Path file, int featureSize, int featureCount, int deckSize, int size, int bytes,
+                                 Consumer<Util.SetSink> generator) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            IntBuffer ints = buffer.asIntBuffer();
+            ints.put(MAGIC).put(VERSION).put(featureSize).put(featureCount).put(size);
+
+            int setsPerCard = (int) ((long) size * featureSize / deckSize);
+            for (int card = 0; card <= deckSize; ++card)
+                ints.put(card * setsPerCard);
+            int cardSetsStart = HEADER_INTS + deckSize + 1, setsStart = cardSetsStart + size * featureSize;
+            int[] next = new int[deckSize];
+            int[] id = {0};
+            generator.accept(set -> {
+                for (int j = 0; j < featureSize; ++j) {
+                    ints.put(setsStart + id[0] * featureSize + j, set[j]);
+                    ints.put(cardSetsStart + set[j] * setsPerCard + next[set[j]]++, id[0]);
+                }
+                return ++id[0] < size;
+            });
+            if (id[0] != size) throw new IOException("generated " + id[0] + " sets instead of " + size);
+            buffer.force();
+        }
+    }
+
+    /**
+     * @return - the number of longs in a mask of deckSize card ids.
+     */
+    public static int maskLength(int deckSize) {
+        return (deckSize + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * @return - the number of legal sets in the deck.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param id - a set id (between 0 and size() - 1).
+     * @return - the sorted card ids of the set.
+     */
+    public int[] set(int id) {
+        int[] set = new int[setSize];
+        for (int j = 0; j < setSize; ++j)
+            set[j] = sets.get(id * setSize + j);
+        return set;
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - the ids of the sets that contain the card.
+     */
+    public int[] setsOf(int card) {
+        int start = cardSetsStart.get(card);
+        int[] ids = new int[cardSetsStart.get(card + 1) - start];
+        for (int i = 0; i < ids.length; ++i)
+            ids[i] = cardSets.get(start + i);
+        return ids;
+    }
+
+    /**
+     * @param id    - a set id.
+     * @param cards - a mask of card ids.
+     * @return - true iff every card of the set is in the mask.
+     */
+    public boolean isWithin(int id, long[] cards) {
+        if (masks == null) {
+            for (int j = id * setSize; j < (id + 1) * setSize; ++j) {
+                int card = sets.get(j);
+                if ((cards[card / Long.SIZE] & 1L << card) == 0) return false;
+            }
+            return true;
+        }
+        for (int i = 0, offset = id * words; i < words; ++i)
+            if ((masks[offset + i] & ~cards[i]) != 0) return false;
+        return true;
+    }
+
+    /**
+     * Finds the sets whose cards are all in a mask of card ids, looking only at the sets of the cards in the mask.
+     *
+     * @param cards - a mask of card ids.
+     * @param found - receives the ids of the sets found.
+     * @param count - the maximum number of sets to find (at most found.length).
+     * @return - the number of set ids written to found.
+     */
+    public int findSets(long[] cards, int[] found, int count) {
+        int length = 0;
+        for (int word = 0; word < words && length < count; ++word) {
+            for (long bits = cards[word]; bits != 0 && length < count; bits &= bits - 1) {
+                int card = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                // a set is visited from each of its cards, and kept from the smallest one
+                for (int i = cardSetsStart.get(card); i < cardSetsStart.get(card + 1) && length < count; ++i) {
+                    int id = cardSets.get(i);
+                    if (sets.get(id * setSize) == card && isWithin(id, cards)) found[length++] = id;
+                }
+            }
+        }
+        return length;
+    }
+}
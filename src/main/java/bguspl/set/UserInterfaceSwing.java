@@ -164,6 +164,20 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             repaint();
         }
 
+        private void placeCards(int[] cards, int[] slots) {
+            for (int i = 0; i < slots.length; ++i)
+                grid[slots[i] / config.columns][slots[i] % config.columns] = deck[cards[i]];
+            validate();
+            repaint();
+        }
+
+        private void removeCards(int[] slots) {
+            for (int slot : slots)
+                grid[slot / config.columns][slot % config.columns] = emptyCard;
+            validate();
+            repaint();
+        }
+
         private void placeToken(int player, int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
@@ -283,6 +297,16 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         gamePanel.removeCard(slot);
     }
 
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        gamePanel.placeCards(cards, slots);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        gamePanel.removeCards(slots);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
         gamePanel.placeToken(player, slot);
@@ -1,6 +1,7 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -31,6 +32,23 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Checks many candidate sets at once.
+     *
+     * @param cards - the candidates, featureSize card ids each, one after the other.
+     * @param count - the number of candidates.
+     * @return - a bitmap of the legal candidates: bit i % 64 of entry i / 64 is set iff candidate i is a legal set.
+     */
+    long[] testSets(int[] cards, int count);
+
+    /**
+     * Finds the card that completes featureSize - 1 cards to a legal set (unique when featureSize >= 3).
+     *
+     * @param cards - an array whose first featureSize - 1 entries are distinct card ids.
+     * @return - the completing card id, or -1 if there is none (or featureSize < 3).
+     */
+    int completeSet(int[] cards);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +58,58 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds and returns up to count sets among length cards of an array.
+     *
+     * @param cards  - an array of distinct card ids.
+     * @param offset - the index of the first card to search.
+     * @param length - the number of cards to search.
+     * @param count  - the maximum number of sets to find.
+     * @return - a list of up to count integer arrays, each one contains the card ids of a legal set.
+     */
+    List<int[]> findSets(int[] cards, int offset, int length, int count);
+
+    /**
+     * Finds and returns up to count sets whose cards are all in a mask of card ids.
+     *
+     * @param cards - a mask of card ids: card c is in it iff bit c % 64 of cards[c / 64] is set.
+     * @param count - the maximum number of sets to find.
+     * @return - a list of up to count integer arrays, each one contains the card ids of a legal set.
+     */
+    List<int[]> findSets(long[] cards, int count);
+
+    /**
+     * Passes each set found among length cards of an array to a sink, until the sink asks to stop.
+     *
+     * @param cards  - an array of distinct card ids.
+     * @param offset - the index of the first card to search.
+     * @param length - the number of cards to search.
+     * @param sink   - receives the sets found.
+     * @return - the number of sets passed to the sink.
+     */
+    int findSets(int[] cards, int offset, int length, SetSink sink);
+
+    /**
+     * Receives the sets found by findSets, one at a time.
+     */
+    interface SetSink {
+
+        /**
+         * @param set - the card ids of a legal set, sorted (the array is reused between calls).
+         * @return - true to keep searching, false to stop.
+         */
+        boolean accept(int[] set);
+    }
+
+    /**
+     * Lazily enumerates the sets in the given collection of cards: sets are searched for only as the stream consumes
+     * them, and a parallel stream splits the search between threads.
+     *
+     * @param deck - a collection of cards (may not include null objects).
+     * @return - a stream of integer arrays, each one contains the card ids of a legal set.
+     */
+    Stream<int[]> streamSets(List<Integer> deck);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
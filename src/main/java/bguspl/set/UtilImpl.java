@@ -1,10 +1,26 @@
 package bguspl.set;
 
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
@@ -13,83 +29,670 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The pool that searches for sets in parallel (see Config.parallelSearchThreshold).
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The features of every card id, built once: the features of card c are at [c * featureCount, (c + 1) * featureCount).
+     */
+    private final int[] features;
+
+    /**
+     * A mask with a bit for each feature.
+     */
+    private final long allFeatures;
+
+    /**
+     * The packed form of every card id: the value of feature i is one-hot encoded in the field of bits
+     * [i * featureSize, (i + 1) * featureSize). Null if the fields of all features do not fit in 64 bits.
+     */
+    private final long[] packed;
+
+    /**
+     * All the bits of the packed fields, and the top bit of each field.
+     */
+    private final long packedFields;
+    private final long packedTops;
+
+    /**
+     * The catalogue of every legal set in the deck: kept in memory up to config.setCatalogueMaxSets sets, mapped from
+     * config.setCatalogueDirectory beyond that (null if there is neither).
+     * Built on the first query that needs it (see catalogue()), as building it may generate the catalogue file.
+     */
+    private SetCatalogue catalogue;
+    private volatile boolean catalogueBuilt;
+
     public UtilImpl(Config config) {
+        this(config, ForkJoinPool.commonPool());
+    }
+
+    public UtilImpl(Config config, ForkJoinPool pool) {
         this.config = config;
+        this.pool = pool;
+        this.features = new int[config.deckSize * config.featureCount];
+        for (int card = 0; card < config.deckSize; ++card)
+            cardToFeatures(card, features, card * config.featureCount);
+        allFeatures = config.featureCount >= Long.SIZE ? -1L : (1L << config.featureCount) - 1;
+
+        int packedBits = config.featureSize * config.featureCount;
+        if (config.featureSize < 2 || packedBits > Long.SIZE) {
+            packed = null;
+            packedFields = packedTops = 0;
+        }
+        else {
+            packed = new long[config.deckSize];
+            for (int card = 0; card < config.deckSize; ++card)
+                for (int i = 0; i < config.featureCount; ++i)
+                    packed[card] |= 1L << (i * config.featureSize + features[card * config.featureCount + i]);
+            packedFields = packedBits == Long.SIZE ? -1L : (1L << packedBits) - 1;
+            long tops = 0;
+            for (int i = 1; i <= config.featureCount; ++i)
+                tops |= 1L << (i * config.featureSize - 1);
+            packedTops = tops;
+        }
+    }
+
+    /**
+     * @return - the number of legal sets in the deck: in a sequence of featureSize cards, each feature has featureSize
+     * all-same choices and featureSize! all-different ones, less the sequences of a single repeated card.
+     */
+    private double countDeckSets() {
+        double factorial = 1;
+        for (int i = 2; i <= config.featureSize; ++i)
+            factorial *= i;
+        return (Math.pow(config.featureSize + factorial, config.featureCount) - config.deckSize) / factorial;
+    }
+
+    private SetCatalogue buildCatalogue() {
+        if (!searchesByCompletion()) return null;
+        if (countDeckSets() > config.setCatalogueMaxSets) return mapCatalogue();
+        int size = (int) Math.round(countDeckSets());
+        int[] sets = new int[size * config.featureSize];
+        int[] deck = IntStream.range(0, config.deckSize).toArray();
+        int[] length = {0};
+        findSets(deck, 0, deck.length, set -> {
+            System.arraycopy(set, 0, sets, length[0], set.length);
+            length[0] += set.length;
+            return true;
+        });
+        return new SetCatalogue(config.deckSize, config.featureSize, sets, size);
+    }
+
+    /**
+     * Maps the on-disk catalogue of the deck, generating it on the first game with this deck.
+     *
+     * @return - the mapped catalogue, or null if there is no catalogue directory or the catalogue cannot be mapped
+     *           (in which case sets are searched for instead).
+     */
+    private SetCatalogue mapCatalogue() {
+        if (config.setCatalogueDirectory.isEmpty() || countDeckSets() > Integer.MAX_VALUE) return null;
+        int[] deck = IntStream.range(0, config.deckSize).toArray();
+        try {
+            Path file = Paths.get(config.setCatalogueDirectory, SetCatalogue.fileName(config.featureSize, config.featureCount));
+            return SetCatalogue.map(file, config.featureSize, config.featureCount, (int) Math.round(countDeckSets()),
+                    sink -> findSets(deck, 0, deck.length, sink));
+        } catch (IOException | InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return - the catalogue of every legal set in the deck, or null if the deck has too many sets to keep one.
+     */
+    public SetCatalogue catalogue() {
+        if (!catalogueBuilt) {
+            synchronized (this) {
+                if (!catalogueBuilt) {
+                    catalogue = buildCatalogue();
+                    catalogueBuilt = true;
+                }
+            }
+        }
+        return catalogue;
     }
 
-    private void cardToFeatures(int card, int[] features) {
+    private void cardToFeatures(int card, int[] features, int offset) {
         for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
+            features[offset + i] = card % config.featureSize;
             card /= config.featureSize;
         }
     }
 
     @Override
     public int[] cardToFeatures(int card) {
-        int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
-        return features;
+        return Arrays.copyOfRange(features, card * config.featureCount, (card + 1) * config.featureCount);
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
-        int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        int[][] features = new int[cards.length][];
+        IntStream.range(0, cards.length).forEach(i -> features[i] = cardToFeatures(cards[i]));
         return features;
     }
 
+    /**
+     * Whether cards have a packed form (see cardToPacked).
+     */
+    public boolean isPackable() {
+        return packed != null;
+    }
+
+    /**
+     * Converts a card id to its packed form, where each feature is one-hot encoded in a field of featureSize bits.
+     * Requires isPackable().
+     *
+     * @param card - the card id.
+     * @return - the packed features.
+     */
+    public long cardToPacked(int card) {
+        return packed[card];
+    }
+
+    /**
+     * Checks if featureSize cards form a legal set, given the bitwise or and the bitwise and of their packed forms.
+     * A feature is all-same iff its field is equal in both, and all-different iff its field is full in the union.
+     * Requires isPackable().
+     *
+     * @param union        - the bitwise or of the packed cards.
+     * @param intersection - the bitwise and of the packed cards.
+     * @return - true iff the cards form a legal set.
+     */
+    public boolean testPackedSet(long union, long intersection) {
+        return illegalFields(union, intersection) == 0;
+    }
+
+    /**
+     * @return - the top bit of the field of each feature that is neither all-same nor all-different.
+     */
+    private long illegalFields(long union, long intersection) {
+        long notSame = union ^ intersection, notDifferent = union ^ packedFields;
+        // adding all-ones to the lower bits of a field carries into its top bit iff any of them is set
+        long lows = packedFields & ~packedTops;
+        long notSameFields = ((notSame & lows) + lows) | notSame;
+        long notDifferentFields = ((notDifferent & lows) + lows) | notDifferent;
+        return notSameFields & notDifferentFields & packedTops;
+    }
+
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
+        return testSet(cards, 0, cards.length);
+    }
+
+    private boolean testSet(int[] cards, int offset, int length) {
+        int end = offset + length;
+        if (packed != null && length == config.featureSize) {
+            long union = 0, intersection = -1L;
+            for (int j = offset; j < end; ++j) {
+                union |= packed[cards[j]];
+                intersection &= packed[cards[j]];
+            }
+            return testPackedSet(union, intersection);
+        }
+        if (config.featureSize > Long.SIZE) return testSetPairwise(cards, offset, end);
         for (int i = 0; i < config.featureCount; ++i) {
+            int first = features[cards[offset] * config.featureCount + i];
             boolean sameSame = true, butDifferent = true;
+            long values = 0;
+            for (int j = offset; j < end; ++j) {
+                int value = features[cards[j] * config.featureCount + i];
+                sameSame &= value == first;
+                butDifferent &= (values & 1L << value) == 0;
+                values |= 1L << value;
+            }
+            if (sameSame == butDifferent) return false;
+        }
+        return true;
+    }
 
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
-
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
-
+    /**
+     * The testSet check for feature values that do not fit a 64 bit mask.
+     */
+    private boolean testSetPairwise(int[] cards, int offset, int end) {
+        for (int i = 0; i < config.featureCount; ++i) {
+            boolean sameSame = true, butDifferent = true;
+            for (int j = offset + 1; j < end; ++j) {
+                int value = features[cards[j] * config.featureCount + i];
+                sameSame &= value == features[cards[offset] * config.featureCount + i];
+                for (int k = offset; k < j; ++k)
+                    butDifferent &= value != features[cards[k] * config.featureCount + i];
+            }
             if (sameSame == butDifferent) return false;
         }
         return true;
     }
 
+    @Override
+    public long[] testSets(int[] cards, int count) {
+        int size = config.featureSize;
+        long[] legal = new long[(count + Long.SIZE - 1) / Long.SIZE];
+        if (packed == null) {
+            for (int i = 0; i < count; ++i)
+                if (testSet(cards, i * size, size)) legal[i / Long.SIZE] |= 1L << i;
+            return legal;
+        }
+
+        // each word of the bitmap is accumulated in a register, branch free: the bit of a candidate is the sign of
+        // (illegal - 1) & ~illegal, which is set iff illegal == 0
+        for (int word = 0, i = 0, j = 0; word < legal.length; ++word) {
+            long bits = 0;
+            int end = Math.min(count, i + Long.SIZE);
+            if (size == 3) {
+                for (; i < end; ++i, j += 3) {
+                    long first = packed[cards[j]], second = packed[cards[j + 1]], third = packed[cards[j + 2]];
+                    long illegal = illegalFields(first | second | third, first & second & third);
+                    bits |= (((illegal - 1) & ~illegal) >>> (Long.SIZE - 1)) << i;
+                }
+            }
+            else {
+                for (; i < end; ++i) {
+                    long union = 0, intersection = -1L;
+                    for (int last = j + size; j < last; ++j) {
+                        union |= packed[cards[j]];
+                        intersection &= packed[cards[j]];
+                    }
+                    long illegal = illegalFields(union, intersection);
+                    bits |= (((illegal - 1) & ~illegal) >>> (Long.SIZE - 1)) << i;
+                }
+            }
+            legal[word] = bits;
+        }
+        return legal;
+    }
+
+    /**
+     * With less than 3 cards per set the completing card is not unique, and the value masks are 64 bits wide, so
+     * other feature sizes are searched by testing every combination.
+     */
+    private boolean searchesByCompletion() {
+        return config.featureSize >= 3 && config.featureSize <= Long.SIZE;
+    }
+
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
-        int r = config.featureSize;
-        int[] combination = new int[r];
-
-        for (int i = 0; i < r; ++i)
-            combination[i] = i;
-
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+        if (!searchesByCompletion()) return findSetsByCombination(deck, count);
+        int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+        return findSets(cards, 0, cards.length, count);
+    }
+
+    @Override
+    public List<int[]> findSets(int[] cards, int offset, int length, int count) {
+        if (!searchesByCompletion()) return findSetsByCombination(boxed(cards, offset, length), count);
+
+        int end = offset + length;
+        int[] positions = positionsOf(cards, offset, end);
+        SetCollector sets = new SetCollector(count);
+        if (config.parallelSearchThreshold > 0 && length >= config.parallelSearchThreshold)
+            pool.invoke(new SetSearch(cards, positions, offset, end, end, sets));
+        else
+            sets.collect(new SetSpliterator(cards, positions, offset, end, end));
+        return new LinkedList<>(sets.sets);
+    }
+
+    @Override
+    public List<int[]> findSets(long[] cards, int count) {
+        SetCatalogue catalogue = catalogue();
+        if (catalogue == null) {
+            int[] deck = IntStream.range(0, config.deckSize).filter(card -> (cards[card / Long.SIZE] & 1L << card) != 0).toArray();
+            return findSets(deck, 0, deck.length, count);
+        }
+        List<int[]> sets = new LinkedList<>();
+        int[] found = new int[Math.min(count, catalogue.size())];
+        int length = catalogue.findSets(cards, found, found.length);
+        for (int i = 0; i < length; ++i)
+            sets.add(catalogue.set(found[i]));
+        return sets;
+    }
+
+    @Override
+    public int findSets(int[] cards, int offset, int length, SetSink sink) {
+        int found = 0;
+        if (!searchesByCompletion()) {
+            for (Iterator<int[]> sets = Spliterators.iterator(new CombinationSpliterator(boxed(cards, offset, length))); sets.hasNext(); ) {
+                ++found;
+                if (!sink.accept(sets.next())) break;
             }
+            return found;
+        }
 
-            // generate next combination in lexicographic order
-            int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
-            combination[t]++;
-            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        int end = offset + length;
+        SetSpliterator sets = new SetSpliterator(cards, positionsOf(cards, offset, end), offset, end, end);
+        int[] set = new int[config.featureSize];
+        while (sets.next(set)) {
+            ++found;
+            if (!sink.accept(set)) break;
         }
+        return found;
+    }
+
+    @Override
+    public Stream<int[]> streamSets(List<Integer> deck) {
+        if (!searchesByCompletion()) return StreamSupport.stream(new CombinationSpliterator(deck), false);
+
+        int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+        return StreamSupport.stream(new SetSpliterator(cards, positionsOf(cards, 0, cards.length), 0, cards.length, cards.length), false);
+    }
+
+    private static List<Integer> boxed(int[] cards, int offset, int length) {
+        return Arrays.stream(cards, offset, offset + length).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * @return - the position of each card id in cards[from..to) (-1 if absent), so a completing card is looked up in O(1).
+     */
+    private int[] positionsOf(int[] cards, int from, int to) {
+        int[] positions = new int[config.deckSize];
+        Arrays.fill(positions, -1);
+        for (int i = from; i < to; ++i)
+            positions[cards[i]] = i;
+        return positions;
+    }
+
+    /**
+     * Lazily enumerates the sets whose first card is at a position in [from, to) of cards[..end). The first featureSize - 1 cards of
+     * a set are chosen depth first in increasing position order, and completed with the only card that can form a
+     * legal set with them, if it is positioned after them in cards.
+     * Every chosen prefix keeps, per feature, whether it is still all-same or still all-different: a prefix where some
+     * feature is neither cannot be completed, so the whole branch is skipped.
+     * Splitting hands over the upper half of the remaining first positions.
+     */
+    private class SetSpliterator implements Spliterator<int[]> {
+
+        private final int[] cards;
+        private final int[] positions;
+        private int to;
+        private final int end;
+
+        /**
+         * The positions of the chosen cards (the next choice to check).
+         */
+        private final int[] chosen;
+
+        /**
+         * Per depth: a bit per feature that is still all-same / all-different among the chosen cards up to it,
+         * and a mask of the values of each feature among them.
+         */
+        private final long[] sameSame;
+        private final long[] butDifferent;
+        private final long[] values;
+
+        private boolean exhausted;
+
+        private SetSpliterator(int[] cards, int[] positions, int from, int to, int end) {
+            this.cards = cards;
+            this.positions = positions;
+            this.to = to;
+            this.end = end;
+            this.chosen = new int[config.featureSize - 1];
+            this.sameSame = new long[chosen.length];
+            this.butDifferent = new long[chosen.length];
+            this.values = new long[chosen.length * config.featureCount];
+            seek(0, from);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            int[] set = new int[chosen.length + 1];
+            if (!next(set)) return false;
+            action.accept(set);
+            return true;
+        }
+
+        /**
+         * Writes the next set found to the given array (sorted).
+         *
+         * @return - false iff there are no more sets.
+         */
+        private boolean next(int[] set) {
+            int last = chosen.length;
+            while (!exhausted) {
+                int completion = completion();
+                boolean found = positions[completion] > chosen[last - 1];
+                if (found) {
+                    for (int i = 0; i < last; ++i)
+                        set[i] = cards[chosen[i]];
+                    set[last] = completion;
+                    Arrays.sort(set);
+                }
+                seek(last - 1, chosen[last - 1] + 1);
+                if (found) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Finds the first choice, in lexicographic order, that keeps chosen[0..depth-1] and has a position of at
+         * least candidate at depth, skipping the branches of prefixes that cannot be completed.
+         */
+        private void seek(int depth, int candidate) {
+            int r = chosen.length;
+            while (true) {
+                if (candidate > end - r + depth || (depth == 0 && candidate >= to)) {
+                    if (depth == 0) {
+                        exhausted = true;
+                        return;
+                    }
+                    --depth;
+                    candidate = chosen[depth] + 1;
+                    continue;
+                }
+                chosen[depth] = candidate;
+                if (!choose(depth)) {
+                    ++candidate;
+                    continue;
+                }
+                if (depth == r - 1) return;
+                ++depth;
+                candidate = chosen[depth - 1] + 1;
+            }
+        }
+
+        /**
+         * Updates the feature masks of a depth for its newly chosen card.
+         *
+         * @return - false iff some feature is neither all-same nor all-different up to the depth.
+         */
+        private boolean choose(int depth) {
+            int count = config.featureCount;
+            int offset = cards[chosen[depth]] * count;
+            if (depth == 0) {
+                sameSame[0] = butDifferent[0] = allFeatures;
+                for (int i = 0; i < count; ++i)
+                    values[i] = 1L << features[offset + i];
+                return true;
+            }
+            long same = sameSame[depth - 1], different = butDifferent[depth - 1];
+            for (int i = 0; i < count; ++i) {
+                long value = 1L << features[offset + i], previous = values[(depth - 1) * count + i];
+                if ((previous & value) == 0) same &= ~(1L << i);
+                else different &= ~(1L << i);
+                values[depth * count + i] = previous | value;
+            }
+            sameSame[depth] = same;
+            butDifferent[depth] = different;
+            return (same | different) == allFeatures;
+        }
+
+        /**
+         * @return - the card completing the chosen cards: each feature repeats an all-same value, or takes the single
+         * value missing from an all-different one.
+         */
+        private int completion() {
+            int depth = chosen.length - 1, count = config.featureCount;
+            int completion = 0;
+            for (int i = 0; i < count; ++i) {
+                long mask = values[depth * count + i];
+                int value = (sameSame[depth] & 1L << i) != 0
+                        ? Long.numberOfTrailingZeros(mask) : Long.numberOfTrailingZeros(~mask);
+                completion = completion * config.featureSize + value;
+            }
+            return completion;
+        }
+
+        @Override
+        public Spliterator<int[]> trySplit() {
+            int from = chosen[0] + 1;
+            if (exhausted || to - from < 2) return null;
+            int middle = (from + to) >>> 1;
+            SetSpliterator suffix = new SetSpliterator(cards, positions, middle, to, end);
+            to = middle;
+            return suffix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return exhausted ? 0 : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * Collects up to count sets, possibly found by several threads.
+     */
+    private static class SetCollector {
+
+        private final int count;
+        private final AtomicInteger found = new AtomicInteger(0);
+        private final Queue<int[]> sets = new ConcurrentLinkedQueue<>();
+
+        private SetCollector(int count) {
+            this.count = count;
+        }
+
+        private boolean isFull() {
+            return found.get() >= count;
+        }
+
+        private void add(int[] set) {
+            if (found.getAndIncrement() < count) sets.add(set);
+        }
+
+        private void collect(Spliterator<int[]> spliterator) {
+            while (!isFull() && spliterator.tryAdvance(this::add)) ;
+        }
+    }
+
+    /**
+     * Searches the sets whose first card is at a position in [from, to) of cards[..end), splitting the range between the pool's
+     * workers. All the tasks stop once the collector has count sets.
+     */
+    private class SetSearch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] cards;
+        private final int[] positions;
+        private final int from;
+        private final int to;
+        private final int end;
+        private final SetCollector sets;
+
+        private SetSearch(int[] cards, int[] positions, int from, int to, int end, SetCollector sets) {
+            this.cards = cards;
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+            this.end = end;
+            this.sets = sets;
+        }
+
+        @Override
+        protected void compute() {
+            if (sets.isFull()) return;
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SetSearch(cards, positions, from, middle, end, sets),
+                        new SetSearch(cards, positions, middle, to, end, sets));
+                return;
+            }
+            sets.collect(new SetSpliterator(cards, positions, from, to, end));
+        }
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        if (config.featureSize < 3 || config.featureSize > Long.SIZE) return -1;
+        return completeSet(cards, config.featureSize - 1);
+    }
+
+    /**
+     * Finds the card completing the first length cards of the array to a legal set: in each feature it repeats the
+     * value of an all-same feature, or takes the single value missing from an all-different one.
+     *
+     * @return - the completing card id, or -1 if some feature is neither all-same nor all-different.
+     */
+    private int completeSet(int[] cards, int length) {
+        int completion = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int first = features[cards[0] * config.featureCount + i];
+            boolean sameSame = true;
+            long values = 0;
+            for (int j = 0; j < length; ++j) {
+                int value = features[cards[j] * config.featureCount + i];
+                sameSame &= value == first;
+                values |= 1L << value;
+            }
+            completion *= config.featureSize;
+            if (sameSame) completion += first;
+            else if (Long.bitCount(values) == length) completion += Long.numberOfTrailingZeros(~values);
+            else return -1;
+        }
+        return completion;
+    }
+
+    private List<int[]> findSetsByCombination(List<Integer> deck, int count) {
+        LinkedList<int[]> sets = new LinkedList<>();
+        CombinationSpliterator combinations = new CombinationSpliterator(deck);
+        while (sets.size() < count && combinations.tryAdvance(sets::add));
         return sets;
     }
 
+    /**
+     * Lazily enumerates the sets in a collection of cards by testing each combination of featureSize cards, in
+     * lexicographic order of their positions. Used when sets cannot be searched by completion; it does not split.
+     */
+    private class CombinationSpliterator extends Spliterators.AbstractSpliterator<int[]> {
+
+        private final List<Integer> deck;
+
+        /**
+         * The positions in deck of the next combination to test.
+         */
+        private final int[] combination;
+
+        private CombinationSpliterator(List<Integer> deck) {
+            super(Long.MAX_VALUE, Spliterator.NONNULL);
+            this.deck = deck;
+            this.combination = IntStream.range(0, config.featureSize).toArray();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            int n = deck.size();
+            int r = combination.length;
+            while (combination[r - 1] < n) {
+                int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
+
+                // generate next combination in lexicographic order
+                int t = r - 1;
+                while (t != 0 && combination[t] == n - r + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+
+                if (testSet(cards)) {
+                    action.accept(cards);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     public void spin() {
         if (config.randomSpinMax <= 0) return;
         long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
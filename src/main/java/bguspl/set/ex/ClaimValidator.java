@@ -0,0 +1,139 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Checks a batch of set requests against a snapshot of the table: whether each still matches the table, and
+ * whether its cards form a legal set. With env.config.claimValidationThreads > 0 the batch is split between the
+ * workers of a pool; otherwise (or once the pool is shut down) it is checked on the calling (dealer) thread.
+ * Deciding which requests are collected, given the verdicts, is left to the dealer.
+ */
+public class ClaimValidator {
+
+    /**
+     * The number of requests below which a batch is not split further between workers.
+     */
+    private static final int SPLIT_THRESHOLD = 64;
+
+    /**
+     * The verdict on a request.
+     */
+    public static final class Verdict {
+
+        /**
+         * The slots of the player's tokens, in increasing order.
+         */
+        public final int[] slots;
+
+        /**
+         * The cards in those slots, or null if the request does not match the table (too few tokens, or a slot
+         * that changed cards since the request was made).
+         */
+        public final int[] cards;
+
+        /**
+         * True iff the cards form a legal set.
+         */
+        public final boolean legal;
+
+        private Verdict(int[] slots, int[] cards, boolean legal) {
+            this.slots = slots;
+            this.cards = cards;
+            this.legal = legal;
+        }
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The workers (null to check requests on the calling thread).
+     */
+    private final ForkJoinPool pool;
+
+    public ClaimValidator(Env env) {
+        this.env = env;
+        this.pool = env.config.claimValidationThreads > 0 ? new ForkJoinPool(env.config.claimValidationThreads) : null;
+    }
+
+    /**
+     * Checks a batch of requests.
+     *
+     * @param snapshot - the table to check the requests against.
+     * @param players  - the requesting player of each request.
+     * @param versions - the table version each request was made against (see TableSnapshot.version).
+     * @return - the verdict on each request.
+     */
+    public Verdict[] validate(TableSnapshot snapshot, int[] players, long[] versions) {
+        Verdict[] verdicts = new Verdict[players.length];
+        Validation validation = new Validation(snapshot, players, versions, verdicts, 0, players.length);
+        if (pool == null) validation.compute();
+        else {
+            try {
+                pool.invoke(validation);
+            } catch (RejectedExecutionException ignored) { // shut down
+                validation.compute();
+            }
+        }
+        return verdicts;
+    }
+
+    private Verdict validate(TableSnapshot snapshot, int player, long version) {
+        int[] slots = snapshot.getTokens(player);
+        if (slots.length < env.config.featureSize || !snapshot.isUnchangedSince(slots, version))
+            return new Verdict(slots, null, false);
+        int[] cards = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            cards[i] = snapshot.cardAt(slots[i]);
+            if (cards[i] == Table.EMPTY) return new Verdict(slots, null, false);
+        }
+        return new Verdict(slots, cards, env.util.testSet(cards));
+    }
+
+    /**
+     * Stops the workers.
+     */
+    public void shutdown() {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    private class Validation extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TableSnapshot snapshot;
+        private final int[] players;
+        private final long[] versions;
+        private final Verdict[] verdicts;
+        private final int from;
+        private final int to;
+
+        private Validation(TableSnapshot snapshot, int[] players, long[] versions, Verdict[] verdicts, int from, int to) {
+            this.snapshot = snapshot;
+            this.players = players;
+            this.versions = versions;
+            this.verdicts = verdicts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            // split only on the pool's workers, not when checked on the calling thread
+            if (pool != null && getPool() == pool && to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Validation(snapshot, players, versions, verdicts, from, middle),
+                        new Validation(snapshot, players, versions, verdicts, middle, to));
+                return;
+            }
+            for (int i = from; i < to; ++i)
+                verdicts[i] = validate(snapshot, players[i], versions[i]);
+        }
+    }
+}
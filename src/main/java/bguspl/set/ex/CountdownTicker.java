@@ -0,0 +1,85 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates the timer display (the countdown, or the time elapsed since the last reset) on its own scheduled thread,
+ * so the dealer thread only wakes for claims and for the reshuffle deadline.
+ * Updates are aligned to the start of the turn: every timerDisplayMillis, and every timerWarningDisplayMillis
+ * once the countdown is within turnTimeoutWarningMillis.
+ */
+public class CountdownTicker {
+
+    private static final int TIMER_ROUND_DOWN = -1;
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The start of the turn and the reshuffle deadline, and the number of restarts so far (a tick of an earlier
+     * turn finds a different generation and stops). Guarded by this.
+     */
+    private long timerStart;
+    private long deadline;
+    private long generation;
+
+    public CountdownTicker(Env env) {
+        this.env = env;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "countdown");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts updating the display for a new turn, showing it right away.
+     *
+     * @param timerStart - the time the turn started.
+     * @param deadline   - the time the dealer reshuffles the deck (ignored unless env.config.turnTimeoutMillis > 0).
+     */
+    public synchronized void restart(long timerStart, long deadline) {
+        this.timerStart = timerStart;
+        this.deadline = deadline;
+        long current = ++generation;
+        if (env.config.turnTimeoutMillis >= 0) schedule(current, 0);
+    }
+
+    /**
+     * Stops updating the display (the thread ends with its current update).
+     */
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private synchronized void tick(long current) {
+        if (current != generation || executor.isShutdown()) return;
+        long now = System.currentTimeMillis();
+        long period = env.config.timerDisplayMillis;
+        if (env.config.turnTimeoutMillis > 0) {
+            long countdown = deadline - now + TIMER_ROUND_DOWN;
+            boolean warn = countdown < env.config.turnTimeoutWarningMillis;
+            env.ui.setCountdown(Math.max(countdown, 0), warn);
+            if (countdown <= 0) return;
+            if (warn) period = env.config.timerWarningDisplayMillis;
+        }
+        else env.ui.setElapsed(now - timerStart);
+
+        schedule(current, period - (now - timerStart) % period);
+    }
+
+    private void schedule(long current, long delayMillis) {
+        try {
+            executor.schedule(() -> tick(current), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {} // stopped
+    }
+}
@@ -1,27 +1,27 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
-import bguspl.set.UtilImpl;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Queue;
-import java.util.Random;
-import java.util.Vector;
-import java.util.Locale.Category;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-
-import javax.swing.tree.TreeNode;
 
 /**
- * This class manages the dealer's threads and data
+ * This class manages the dealer's threads and data.
+ * Claims go through three stages: verification against a table snapshot (ClaimValidator, on worker threads if
+ * configured), the commit of points, penalties and card changes (the dealer thread), and their display with the
+ * table animation (TableRenderer's thread), so the dealer checks the next claims while the last ones are animated.
  *
- * @inv setRequests.size() <= players.length
+ * @inv claimQueueDepth == setRequests.size() <= players.length, whenever no player is adding a request
  */
 public class Dealer implements Runnable {
 
@@ -40,12 +40,26 @@ public class Dealer implements Runnable {
      * Utils
      */
     private long timerStart;
-    private final int TIMER_ROUND_DOWN = -1;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * Updates the timer display on its own thread.
+     */
+    private final CountdownTicker ticker;
+
+    /**
+     * Checks players' set requests, on worker threads if configured.
+     */
+    private final ClaimValidator claimValidator;
+
+    /**
+     * The card ids that are left in the dealer's deck.
+     */
+    private final Deck deck;
+
+    /**
+     * The source of the dealer's random draws, seeded from env.config.randomSeed.
      */
-    private final List<Integer> deck;
+    private final SplittableRandom random;
 
     /**
      * True iff game should be terminated due to an external event.
@@ -61,18 +75,110 @@ public class Dealer implements Runnable {
     private long reshuffleTime = Long.MAX_VALUE;
 
     /**
-     * A queue of pending set requests from players
+     * Buffers reused by every deal: the cards drawn and their slots, and the table with the cards drawn (see hasSet).
+     * Only used by the dealer thread.
+     */
+    private final int[] dealCards;
+    private final int[] dealSlots;
+    private final int[] dealtTable;
+
+    /**
+     * The set dealSet deals, and the number of sets it was sampled from (see sample).
+     */
+    private final int[] dealChosen;
+    private int dealCandidates;
+
+    /**
+     * The set being completed by dealSet (see sampleCompletions).
+     */
+    private final int[] dealCompleted;
+
+    /**
+     * A set request from a player: the player's tokens, as of the table version they were placed against.
+     */
+    private static final class Claim {
+        final int player;
+        final long version;
+
+        Claim(int player, long version) {
+            this.player = player;
+            this.version = version;
+        }
+    }
+
+    /**
+     * A queue of pending set requests from players. Players add to it without locking, and the dealer drains
+     * all of it at once.
+     */
+    private final ConcurrentLinkedQueue<Claim> setRequests;
+
+    /**
+     * The number of claims in setRequests, and the most there ever were.
+     */
+    private final AtomicInteger claimQueueDepth = new AtomicInteger();
+    private final AtomicInteger claimQueuePeak = new AtomicInteger();
+
+    /**
+     * The dealer thread, unparked by new claims and by answers of the end game oracle.
+     */
+    private volatile Thread dealerThread;
+
+    /**
+     * Tracks whether any legal set remains in the deck and on the table.
+     */
+    private final EndGameOracle endGameOracle;
+
+    /**
+     * A mask of the card ids left in the game, in the deck or on the table (see Util.findSets(long[], int)).
+     */
+    private final long[] cardsLeft;
+
+    /**
+     * The number of changes to cardsLeft so far.
+     */
+    private long cardsLeftVersion;
+
+    /**
+     * The table after the next reshuffle: the cards for slots 0, 1, ..., drawn from cardsLeft as of a version.
      */
-    private ArrayDeque<Integer> setRequests;
+    private static final class Layout {
+        final long version;
+        final int[] cards;
+
+        Layout(long version, int[] cards) {
+            this.version = version;
+            this.cards = cards;
+        }
+    }
+
+    /**
+     * The layout for the next reshuffle, drawn in the background while the countdown runs (see prepareReshuffle).
+     * Only used by the dealer thread.
+     */
+    private CompletableFuture<Layout> nextLayout;
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
         this.playerThreads = new Thread[players.length];
-        this.setRequests = new ArrayDeque<>(players.length);
-
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        this.setRequests = new ConcurrentLinkedQueue<>();
+        // with no countdown, dealSet deals from every set the oracle finds
+        this.endGameOracle = new EndGameOracle(env, this::wakeDealer,
+                env.config.turnTimeoutMillis > 0 ? 1 : Integer.MAX_VALUE);
+        this.ticker = new CountdownTicker(env);
+        this.claimValidator = new ClaimValidator(env);
+
+        deck = new Deck(env.config.deckSize);
+        dealCards = new int[env.config.tableSize];
+        dealSlots = new int[env.config.tableSize];
+        dealtTable = new int[env.config.tableSize];
+        dealChosen = new int[env.config.featureSize];
+        dealCompleted = new int[env.config.featureSize];
+        random = new SplittableRandom(env.config.randomSeed);
+        cardsLeft = new long[(env.config.deckSize + Long.SIZE - 1) / Long.SIZE];
+        for (int card = 0; card < env.config.deckSize; ++card)
+            cardsLeft[card / Long.SIZE] |= 1L << card;
     }
 
     /**
@@ -81,6 +187,8 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
+        dealerThread = Thread.currentThread();
+        env.logger.info("random seed: " + env.config.randomSeed);
 
         
         for (int i=0; i < players.length; i++) {
@@ -88,54 +196,56 @@ public class Dealer implements Runnable {
             playerThreads[i].start();
         }
 
+        endGameOracle.cardsChanged(cardsLeft.clone());
+        if (env.config.turnTimeoutMillis <= 0) awaitEndGameAnswer();
         table.tokensLock.dealerLock();
         placeCardsOnTable();
         table.tokensLock.dealerUnlock();
-        
-        while (!shouldFinish()) {
-            timerStart = System.currentTimeMillis();
-            reshuffleTime = timerStart + env.config.turnTimeoutMillis;
-            updateTimerDisplay(false);
+        if (env.config.hints) table.hints();
+        startTurn();
 
+        while (!shouldFinish()) {
             if (env.config.turnTimeoutMillis > 0) {
 
                 timerLoop();
-                updateTimerDisplay(false);
-                table.tokensLock.dealerLock();
-                removeAllCardsFromTable();
-                placeCardsOnTable();
-                table.tokensLock.dealerUnlock();
+                // no reshuffle when the game ends with the countdown
+                if (shouldFinish()) break;
+                reshuffle();
+                startTurn();
             }
 
             else {
-                boolean reset = false;
-                synchronized(setRequests) {
-                    if (setRequests.size() == 0)
-                        sleepUntilWokenOrTimeout();
-                    reset = checkSets();
-                }
-                boolean noSetsAvailable = env.util.findSets(
-                    Arrays.stream(table.getCardsOnTable()).collect(Collectors.toList()), 1
-                    ).size() == 0;
+                // with no countdown, a table without sets is reshuffled right away
+                if (table.countSets() > 0) sleepUntilWokenOrDeadline();
+                boolean reset = checkSets();
+                boolean noSetsAvailable = table.countSets() == 0;
                 if(noSetsAvailable){
+                    // redeal only once the oracle tells whether any set is left, rather than over and over until then
+                    awaitEndGameAnswer();
+                    shouldFinish();
                     table.tokensLock.dealerLock();
                     removeAllCardsFromTable();
                     if (!gameFinished) placeCardsOnTable();
                     table.tokensLock.dealerUnlock();
+                    if (env.config.hints && !gameFinished) table.hints();
                 }
-                reset = reset || noSetsAvailable;
-                if (env.config.turnTimeoutMillis == 0) updateTimerDisplay(reset);
+                if (reset || noSetsAvailable) startTurn();
             }
         }
 
         terminate();
+        // the validator is only shut down here, once the dealer no longer checks claims
+        claimValidator.shutdown();
+        if (nextLayout != null) nextLayout.cancel(false);
 
         for (int i = playerThreads.length - 1; i >= 0; i--)
             try{ playerThreads[i].join(); } catch (InterruptedException ignored) {}
 
         
         removeAllCardsFromTable();
+        table.stopRendering();
         announceWinners();
+        env.logger.info("claim queue peak depth: " + claimQueuePeak.get());
         env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -143,30 +253,113 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
-            sleepUntilWokenOrTimeout();
-            updateTimerDisplay(false);
-            synchronized(setRequests){
-                if(checkSets()){
-                    timerStart = System.currentTimeMillis();
-                    reshuffleTime = timerStart + env.config.turnTimeoutMillis;
-                    updateTimerDisplay(false);
-                }
+        while (!terminate && endGameOracle.setsRemain() && System.currentTimeMillis() < reshuffleTime) {
+            sleepUntilWokenOrDeadline();
+            if(checkSets()) startTurn();
+        }
+    }
+
+    /**
+     * Restarts the countdown (or the elapsed time) and its display, and with a countdown, starts preparing the
+     * reshuffle at its end.
+     */
+    private void startTurn() {
+        timerStart = System.currentTimeMillis();
+        reshuffleTime = timerStart + env.config.turnTimeoutMillis;
+        ticker.restart(timerStart, reshuffleTime);
+        if (env.config.turnTimeoutMillis > 0) prepareReshuffle();
+    }
+
+    /**
+     * Starts drawing the layout of the next reshuffle on the common pool, from the cards left now and with a
+     * random split off the dealer's (so a seeded game still replays the same). A layout drawn from an older
+     * cardsLeft is dropped at the reshuffle.
+     */
+    private void prepareReshuffle() {
+        if (nextLayout != null) nextLayout.cancel(false);
+        long version = cardsLeftVersion;
+        long[] cards = cardsLeft.clone();
+        SplittableRandom layoutRandom = random.split();
+        int tableSize = env.config.tableSize;
+        nextLayout = CompletableFuture.supplyAsync(() -> new Layout(version, drawLayout(cards, tableSize, layoutRandom)));
+    }
+
+    /**
+     * Draws up to tableSize random cards, in random order, from a mask of card ids (a partial Fisher-Yates shuffle).
+     *
+     * @param cards     - a mask of card ids.
+     * @param tableSize - the number of cards to draw.
+     * @param random    - the source of randomness.
+     * @return - the cards drawn.
+     */
+    private static int[] drawLayout(long[] cards, int tableSize, SplittableRandom random) {
+        int[] pool = new int[cards.length * Long.SIZE];
+        int size = 0;
+        for (int word = 0; word < cards.length; ++word)
+            for (long bits = cards[word]; bits != 0; bits &= bits - 1)
+                pool[size++] = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+        int count = Math.min(tableSize, size);
+        for (int i = 0; i < count; ++i) {
+            int j = i + random.nextInt(size - i);
+            int card = pool[j];
+            pool[j] = pool[i];
+            pool[i] = card;
+        }
+        return Arrays.copyOf(pool, count);
+    }
+
+    /**
+     * Returns all the cards on the table to the deck and deals a new table: the prepared layout if it is ready and
+     * drawn from the current cards, otherwise a random deal as usual. Either way the swap is one batched removal
+     * and placement.
+     */
+    private void reshuffle() {
+        // a layout still being drawn, cancelled or failed is no layout
+        Layout layout = nextLayout != null && nextLayout.isDone() && !nextLayout.isCompletedExceptionally()
+                ? nextLayout.join() : null;
+        nextLayout = null;
+        table.tokensLock.dealerLock();
+        removeAllCardsFromTable();
+        if (layout != null && layout.version == cardsLeftVersion) {
+            // removeAllCardsFromTable cleared the tokens, and the layout's cards are in random order already
+            int count = layout.cards.length;
+            for (int i = 0; i < count; i++) {
+                deck.remove(layout.cards[i]);
+                dealSlots[i] = i;
             }
+            table.placeCards(layout.cards, dealSlots, count);
         }
-        
-        
+        else placeCardsOnTable();
+        table.tokensLock.dealerUnlock();
+        if (env.config.hints) table.hints();
     }
 
     /**
      * Called when the game should be terminated due to an external event.
      */
     public void terminate() {
+        ticker.stop();
         for (int i = players.length - 1; i >= 0; i--) {
                 players[i].terminate();
                 playerThreads[i].interrupt();
         }
         terminate = true;
+        wakeDealer();
+    }
+
+    /**
+     * Wakes the dealer thread if it is sleeping (see sleepUntilWokenOrDeadline).
+     */
+    private void wakeDealer() {
+        Thread thread = dealerThread;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Waits until the end game oracle answers for the latest cards left (it wakes the dealer), or the game terminates.
+     */
+    private void awaitEndGameAnswer() {
+        while (!terminate && !endGameOracle.isUpToDate()) LockSupport.park(this);
     }
 
     /**
@@ -175,14 +368,21 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        List<Integer> fullDeck = new ArrayList<Integer>(deck);
-        for(int i = 0; i < env.config.rows * env.config.columns; i++)
-            if(table.slotToCard[i] != null) 
-                fullDeck.add(table.slotToCard[i]);
-        
-        gameFinished = terminate || env.util.findSets(fullDeck, 1).size() == 0;
+        gameFinished = terminate || !endGameOracle.setsRemain();
         return gameFinished;
     }
+
+    /**
+     * Discards the cards of collected sets from the game and reports the cards left to the end game oracle.
+     *
+     * @param set - the cards of the sets.
+     */
+    private void discardSet(int[] set) {
+        for (int card : set)
+            cardsLeft[card / Long.SIZE] &= ~(1L << card);
+        cardsLeftVersion++;
+        endGameOracle.cardsChanged(cardsLeft.clone());
+    }
     
 
     /**
@@ -190,93 +390,163 @@ public class Dealer implements Runnable {
      * 
      * @param slots: slots placements to remove cards from
      */
-    private void removeCardsFromTable(List<Integer> slots) {
-        List<Integer> slotsCopy = new ArrayList<Integer>(slots);
-        for(int slot : slotsCopy) {
-            clearTokens(slot);
-            table.removeCard(slot);
-        }
+    private void removeCardsFromTable(int[] slots) {
+        for(int slot : slots)
+            table.clearTokens(slot);
+        table.removeCards(slots);
+    }
+
+    /**
+     * Returns the slots that change when a set is replaced: the set's own slots and the empty ones, which
+     * placeCardsOnTable fills as well.
+     *
+     * @param set - the slots of the set.
+     * @return - the set's slots followed by the empty slots.
+     */
+    private int[] slotsToReplace(int[] set) {
+        int[] slots = Arrays.copyOf(set, env.config.tableSize);
+        int count = set.length;
+        for (int slot = 0; slot < env.config.tableSize; slot++)
+            if (table.cardAt(slot) == Table.EMPTY) slots[count++] = slot;
+        return Arrays.copyOf(slots, count);
     }
 
     /**
      * Check if any cards can be removed from the deck and placed on the table.
+     * With no countdown, the cards are chosen so that the table has a legal set whenever the cards left allow it
+     * (see dealSet), rather than having the table reshuffled until it does.
      */
     private void placeCardsOnTable() {
-        
-        Vector<Integer> placementOrder = new Vector<>();
-        for(int i = 0; i < env.config.rows*env.config.columns; i++){
-            placementOrder.add(i);
-        }
-        Collections.shuffle(placementOrder);
-
-        Random random = new Random();
-        for (int slot : placementOrder) {
-            if (table.slotToCard[slot] == null) {
-                clearTokens(slot);
-                if (deck.size() > 0) {
-                    int chosenCardIndex = random.nextInt(deck.size());
-                    int chosenCard = deck.remove(chosenCardIndex);
-                    table.placeCard(chosenCard, slot);
+        int[] cards = dealCards;
+        int[] slots = dealSlots;
+        int count = 0;
+        for (int slot = 0; slot < env.config.tableSize; slot++) {
+            if (table.cardAt(slot) == Table.EMPTY) {
+                table.clearTokens(slot);
+                if (!deck.isEmpty()) {
+                    cards[count] = deck.draw(random);
+                    slots[count++] = slot;
                 }
             }
         }
-        
-        if (env.config.hints) table.hints();
+        if (env.config.turnTimeoutMillis <= 0 && count > 0 && !hasSet(cards, count)) dealSet(cards, count);
+        table.placeCards(cards, slots, count);
     }
 
     /**
-     * Clears any token placements from a specific slot
-     * @param slot: The slot to remove tokens from
+     * @param cards - cards drawn for the empty slots of the table.
+     * @param count - the number of cards drawn.
+     * @return - true iff the table would have a legal set once the cards are placed.
      */
-    private void clearTokens(int slot){
-        for (int id = 0; id < table.playersTokens.size(); id++) {
-            ArrayList<Integer> playerTokens = table.playersTokens.get(id);
-            if (playerTokens.contains(slot)) 
-                table.toggleToken(id, slot);
-        }
+    private boolean hasSet(int[] cards, int count) {
+        int length = table.getCardsOnTable(dealtTable, 0);
+        System.arraycopy(cards, 0, dealtTable, length, count);
+        return env.util.findSets(dealtTable, 0, length + count, set -> false) > 0;
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Redraws the cards for the empty slots of the table so that they complete a legal set with the cards on it,
+     * chosen at random among the sets that fit: first among the sets that take a single card from the deck (the
+     * completions of the cards on the table), then, if there is none, among all the sets of the cards left that take
+     * no more cards from the deck than there are slots to fill. The sets of the cards left come from the end game
+     * oracle's search, done in the background rather than under the dealer's locks. The rest of the slots get random
+     * cards. If no set fits, the cards are redrawn at random.
+     *
+     * @param cards - the cards drawn, replaced with the cards to place.
+     * @param count - the number of cards drawn.
      */
-    private void sleepUntilWokenOrTimeout() {
-        long extraMillis = 1000 + (timerStart - System.currentTimeMillis()) % 1000;
-        if (env.config.turnTimeoutMillis > 0) {
-            long countdown = (reshuffleTime - System.currentTimeMillis() + TIMER_ROUND_DOWN);
-            boolean warn = countdown < env.config.turnTimeoutWarningMillis;
-            if (warn) extraMillis = 10 + (timerStart - System.currentTimeMillis()) % 10;
+    private void dealSet(int[] cards, int count) {
+        for (int i = 0; i < count; i++)
+            deck.add(cards[i]);
+
+        dealCandidates = 0;
+        if (env.config.featureSize >= 3)
+            sampleCompletions(dealCompleted, 0, 0, table.getCardsOnTable(dealtTable, 0));
+        if (dealCandidates == 0) {
+            // the oracle's sets may be of older cards: a set whose cards are not all left is gone
+            for (int[] set : endGameOracle.sets()) {
+                int fromDeck = 0;
+                for (int card : set) {
+                    if ((cardsLeft[card / Long.SIZE] & 1L << card) == 0) {
+                        fromDeck = Integer.MAX_VALUE;
+                        break;
+                    }
+                    if (deck.contains(card)) fromDeck++;
+                }
+                if (fromDeck <= count) sample(set);
+            }
         }
-        if (env.config.turnTimeoutMillis < 0) extraMillis = 0;
-        synchronized (setRequests) { try {setRequests.wait(extraMillis);} catch (InterruptedException ignored) {} }
-        
+
+        int dealt = 0;
+        if (dealCandidates > 0) {
+            for (int card : dealChosen) {
+                if (deck.contains(card)) {
+                    deck.remove(card);
+                    cards[dealt++] = card;
+                }
+            }
+        }
+        while (dealt < count)
+            cards[dealt++] = deck.draw(random);
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Samples the sets made of featureSize - 1 cards on the table and the card in the deck that completes them.
+     *
+     * @param set     - the cards chosen so far.
+     * @param depth   - the number of cards chosen so far.
+     * @param from    - the index in dealtTable of the next card to choose from.
+     * @param onTable - the number of cards on the table, in dealtTable.
      */
-    private void updateTimerDisplay(boolean reset) {
-        if(env.config.turnTimeoutMillis > 0) {
-            long countdown = (reshuffleTime - System.currentTimeMillis() + TIMER_ROUND_DOWN);
-            boolean warn = countdown < env.config.turnTimeoutWarningMillis;
-            env.ui.setCountdown(Math.max(countdown,0), warn);
+    private void sampleCompletions(int[] set, int depth, int from, int onTable) {
+        if (depth == set.length - 1) {
+            int completion = env.util.completeSet(set);
+            if (completion >= 0 && deck.contains(completion)) {
+                set[depth] = completion;
+                sample(set);
+            }
+            return;
         }
-        else {
-            if (reset) timerStart = System.currentTimeMillis();
-            env.ui.setElapsed(System.currentTimeMillis() - timerStart);
+        for (int i = from; i < onTable; i++) {
+            set[depth] = dealtTable[i];
+            sampleCompletions(set, depth + 1, i + 1, onTable);
         }
     }
 
+    /**
+     * Reservoir sampling of the sets dealSet may deal: every set passed is equally likely to end up in dealChosen.
+     *
+     * @param set - the cards of a set.
+     */
+    private void sample(int[] set) {
+        if (random.nextInt(++dealCandidates) == 0)
+            System.arraycopy(set, 0, dealChosen, 0, set.length);
+    }
+
+    /**
+     * Sleep until a player makes a claim, the end game oracle answers, or the countdown reaches the reshuffle time.
+     */
+    private void sleepUntilWokenOrDeadline() {
+        if (claimQueueDepth.get() > 0) return;
+        if (env.config.turnTimeoutMillis > 0) LockSupport.parkUntil(this, reshuffleTime);
+        else LockSupport.park(this);
+    }
+
     /**
      * Returns all the cards from the table to the deck.
      */
     private void removeAllCardsFromTable() {
-        for (int slot = 0; slot < table.slotToCard.length; slot++) {
-            if (table.slotToCard[slot] != null) {
-                clearTokens(slot);
-                deck.add(table.slotToCard[slot]);
-                table.removeCard(slot);
+        int[] slots = dealSlots;
+        int count = 0;
+        for (int slot = 0; slot < env.config.tableSize; slot++) {
+            int card = table.cardAt(slot);
+            if (card != Table.EMPTY) {
+                table.clearTokens(slot);
+                deck.add(card);
+                slots[count++] = slot;
             }
         }
+        table.removeCards(slots, count);
     }
 
     /**
@@ -285,57 +555,100 @@ public class Dealer implements Runnable {
      * @param playerId: requesting player
      */
     public void addSetRequest(int playerId){
-        synchronized (setRequests) {
-            setRequests.add(playerId);
-            setRequests.notifyAll();
-        }
+        addSetRequest(playerId, Long.MAX_VALUE);
+    }
+
+    /**
+     * Used by the players to add themselves to the dealer request queue, with the table version their
+     * tokens were placed against. The request is rejected without testing the cards if any of its slots
+     * changed cards since.
+     *
+     * @param playerId: requesting player
+     * @param version:  the version of the table snapshot when the last token was placed
+     */
+    public void addSetRequest(int playerId, long version){
+        setRequests.add(new Claim(playerId, version));
+        claimQueuePeak.accumulateAndGet(claimQueueDepth.incrementAndGet(), Math::max);
+        wakeDealer();
     }
 
     /**
-     * Handles set requests from players
+     * @return - the number of set requests waiting for the dealer.
+     */
+    public int getClaimQueueDepth() {
+        return claimQueueDepth.get();
+    }
+
+    /**
+     * @return - the most set requests that were ever waiting for the dealer at once.
+     */
+    public int getClaimQueuePeak() {
+        return claimQueuePeak.get();
+    }
+
+    /**
+     * Handles set requests from players: drains all the pending requests and checks them against a single
+     * snapshot of the table (in parallel, see ClaimValidator), then commits the verdicts on the dealer thread.
+     * Requests are resolved by the table version they were made against, then by player id, so when two legal sets
+     * share a slot the earlier one is collected and the other is turned down without penalty, as its cards are gone.
      * @return:  wether a legal set was found among the requests
      */
     private boolean checkSets(){
-        Integer requestPlayerId;
-        boolean foundSets = false;
-        do {
-            synchronized (setRequests) {
-                requestPlayerId = setRequests.pollFirst();
+        List<Claim> claims = new ArrayList<>();
+        for (Claim claim = setRequests.poll(); claim != null; claim = setRequests.poll())
+            claims.add(claim);
+        if (claims.isEmpty()) return false;
+        claimQueueDepth.addAndGet(-claims.size());
+        claims.sort(Comparator.<Claim>comparingLong(claim -> claim.version).thenComparingInt(claim -> claim.player));
+
+        int[] claimPlayers = new int[claims.size()];
+        long[] claimVersions = new long[claims.size()];
+        for (int i = 0; i < claims.size(); i++) {
+            claimPlayers[i] = claims.get(i).player;
+            claimVersions[i] = claims.get(i).version;
+        }
+        ClaimValidator.Verdict[] verdicts = claimValidator.validate(table.snapshot(), claimPlayers, claimVersions);
+
+        boolean[] collected = new boolean[env.config.tableSize];
+        int[] collectedSlots = new int[env.config.tableSize];
+        int[] collectedCards = new int[env.config.tableSize];
+        int collectedCount = 0;
+        for (int c = 0; c < verdicts.length; c++) {
+            ClaimValidator.Verdict verdict = verdicts[c];
+            boolean illegalSet = verdict.cards == null;
+            for (int i = 0; !illegalSet && i < verdict.slots.length; i++)
+                illegalSet = collected[verdict.slots[i]];
+            if (illegalSet) {
+                // the claim no longer matches the table: neither a point nor a penalty
             }
-            if (requestPlayerId != null) {
-                Player player = players[requestPlayerId];
-                List<Integer> tokenPlacements;
-                synchronized(table.playersTokens) { tokenPlacements = table.playersTokens.get(requestPlayerId); }
-                synchronized(tokenPlacements) {
-                    int[] chosenCards = new int[tokenPlacements.size()];
-                    boolean illegalSet = tokenPlacements.size() < env.config.featureSize;
-                    for (int i = 0; !illegalSet && i < tokenPlacements.size(); i++){
-                        illegalSet = table.slotToCard[tokenPlacements.get(i)] == null;
-                        if (!illegalSet)
-                            chosenCards[i] = table.slotToCard[tokenPlacements.get(i)];
-                    }
-                    if (illegalSet) {
-                    }
-                    else if(env.util.testSet(chosenCards)){
-                        player.point();
-                        
-                        table.tokensLock.dealerLock();
-                        removeCardsFromTable(tokenPlacements);
-                        placeCardsOnTable();
-                        table.tokensLock.dealerUnlock();
-
-                        penalizePlayer(requestPlayerId, env.config.pointFreezeMillis);
-                        foundSets = true;
-                    }
-                    else {
-                        penalizePlayer(requestPlayerId, env.config.penaltyFreezeMillis);
-                    }
-                    synchronized (player) { player.notifyAll(); }
+            else if(verdict.legal){
+                players[claimPlayers[c]].point();
+                for (int i = 0; i < verdict.slots.length; i++) {
+                    collected[verdict.slots[i]] = true;
+                    collectedSlots[collectedCount] = verdict.slots[i];
+                    collectedCards[collectedCount++] = verdict.cards[i];
                 }
+                penalizePlayer(claimPlayers[c], env.config.pointFreezeMillis);
             }
+            else {
+                penalizePlayer(claimPlayers[c], env.config.penaltyFreezeMillis);
+            }
+        }
+
+        if (collectedCount > 0) {
+            int[] slots = Arrays.copyOf(collectedSlots, collectedCount);
+            table.tokensLock.dealerLock(slotsToReplace(slots));
+            removeCardsFromTable(slots);
+            discardSet(Arrays.copyOf(collectedCards, collectedCount));
+            placeCardsOnTable();
+            table.tokensLock.dealerUnlock();
+            if (env.config.hints) table.hints();
+        }
+        for (Claim claim : claims) {
+            Player player = players[claim.player];
+            synchronized (player) { player.notifyAll(); }
         }
-        while (requestPlayerId != null);
-        return foundSets;
+        return collectedCount > 0;
     }
 
     /**
@@ -376,10 +689,10 @@ public class Dealer implements Runnable {
 
     /**
      * setRequests getter. for testing
-     * @return setRequests
+     * @return the ids of the players with pending requests, in the order they were made
      */
-    public ArrayDeque<Integer> getSetRequests() {
-        return setRequests;
+    public Queue<Integer> getSetRequests() {
+        return setRequests.stream().map(claim -> claim.player).collect(Collectors.toCollection(ArrayDeque::new));
     }
 
     /**
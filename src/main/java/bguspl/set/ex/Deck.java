@@ -0,0 +1,94 @@
+package bguspl.set.ex;
+
+import java.util.SplittableRandom;
+
+/**
+ * The cards left in the dealer's deck, as a primitive array in no particular order.
+ * A card is drawn at random and swapped with the last card, so drawing and returning cards take O(1) and allocate
+ * nothing. Each card's index is tracked as well, so a given card is removed in O(1) too.
+ *
+ * @inv 0 <= size <= cards.length
+ * @inv positions[cards[i]] == i for every i < size, and positions[c] == -1 for every card c not in the deck
+ */
+public class Deck {
+
+    /**
+     * The cards in the deck are cards[0..size).
+     */
+    private final int[] cards;
+    private int size;
+
+    /**
+     * The index of each card in cards (-1 if it is not in the deck).
+     */
+    private final int[] positions;
+
+    /**
+     * @param deckSize - the number of card ids; the deck starts with all of them.
+     */
+    public Deck(int deckSize) {
+        cards = new int[deckSize];
+        positions = new int[deckSize];
+        for (int card = 0; card < deckSize; ++card)
+            cards[card] = positions[card] = card;
+        size = deckSize;
+    }
+
+    /**
+     * @return - the number of cards in the deck.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - true iff the deck has no cards.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes a random card from the deck.
+     *
+     * @param random - the source of randomness.
+     * @return - the card drawn.
+     * @pre - !isEmpty()
+     */
+    public int draw(SplittableRandom random) {
+        int card = cards[random.nextInt(size)];
+        remove(card);
+        return card;
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - true iff the card is in the deck.
+     */
+    public boolean contains(int card) {
+        return positions[card] >= 0;
+    }
+
+    /**
+     * Removes a given card from the deck.
+     *
+     * @param card - a card id that is in the deck.
+     */
+    public void remove(int card) {
+        int index = positions[card];
+        int last = cards[--size];
+        cards[index] = last;
+        positions[last] = index;
+        positions[card] = -1;
+    }
+
+    /**
+     * Returns a card to the deck.
+     *
+     * @param card - a card id that is not in the deck.
+     */
+    public void add(int card) {
+        positions[card] = size;
+        cards[size++] = card;
+    }
+}
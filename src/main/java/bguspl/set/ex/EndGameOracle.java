@@ -0,0 +1,114 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class tracks whether any legal set remains among the cards of the game (the deck and the table together).
+ * The cards of the game only change when a set is collected, so the dealer reports those changes and the search
+ * runs asynchronously (on the common fork/join pool), off the dealer's thread.
+ */
+public class EndGameOracle {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * Called after a new answer is published (e.g. to wake the dealer).
+     */
+    private final Runnable onAnswer;
+
+    /**
+     * The version of the latest reported cards.
+     */
+    private final AtomicLong version;
+
+    /**
+     * The version of the cards setsRemain answers for.
+     */
+    private volatile long answeredVersion;
+
+    /**
+     * The most sets each search keeps (at least 1, which answers setsRemain).
+     */
+    private final int setsKept;
+
+    /**
+     * True iff a legal set was found among the cards of the latest answered version.
+     */
+    private volatile boolean setsRemain;
+
+    /**
+     * The sets found among the cards of the latest answered version.
+     */
+    private volatile List<int[]> sets;
+
+    public EndGameOracle(Env env, Runnable onAnswer) {
+        this(env, onAnswer, 1);
+    }
+
+    /**
+     * @param setsKept - the most sets each search keeps for sets(), rather than stopping at the first one.
+     */
+    public EndGameOracle(Env env, Runnable onAnswer, int setsKept) {
+        this.env = env;
+        this.onAnswer = onAnswer;
+        this.setsKept = Math.max(1, setsKept);
+        this.version = new AtomicLong(0);
+        this.setsRemain = true;
+        this.sets = Collections.emptyList();
+    }
+
+    /**
+     * Reports the cards that are left in the game and starts searching them for a set in the background.
+     * Answers for previously reported cards that arrive later are discarded.
+     *
+     * @param cards - a mask of the card ids in the deck and on the table (see Util.findSets(long[], int)), which
+     *              must not be modified afterwards.
+     */
+    public void cardsChanged(long[] cards) {
+        long cardsVersion = version.incrementAndGet();
+        CompletableFuture.supplyAsync(() -> env.util.findSets(cards, setsKept))
+                .thenAccept(found -> answer(cardsVersion, found));
+    }
+
+    private synchronized void answer(long cardsVersion, List<int[]> found) {
+        if (cardsVersion != version.get()) return;
+        sets = Collections.unmodifiableList(found);
+        setsRemain = !found.isEmpty();
+        answeredVersion = cardsVersion;
+        onAnswer.run();
+    }
+
+    /**
+     * Never blocks: while the latest cards are still being searched, this is the answer for the previous ones.
+     *
+     * @return - true iff a legal set remains among the cards of the game.
+     */
+    public boolean setsRemain() {
+        return setsRemain;
+    }
+
+    /**
+     * Never blocks. The cards of the game only ever shrink, so the sets among the latest reported cards are the
+     * sets returned here whose cards are all still in the game, as long as setsKept covers every set.
+     *
+     * @return - up to setsKept of the sets among the cards of the latest answered version (none before the first).
+     */
+    public List<int[]> sets() {
+        return sets;
+    }
+
+    /**
+     * @return - true iff setsRemain() answers for the latest reported cards (or no cards were reported yet).
+     */
+    public boolean isUpToDate() {
+        return answeredVersion == version.get();
+    }
+}
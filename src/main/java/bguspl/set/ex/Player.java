@@ -88,8 +88,6 @@ public class Player implements Runnable {
         this.id = id;
         this.human = human;
         this.pressedSlots = new ArrayBlockingQueue<Integer>(env.config.featureSize);
-        if (table != null && table.playersTokens != null)
-            table.playersTokens.add(new ArrayList<Integer>(env.config.featureSize));
         this.dealer = dealer;
         this.penaltySec = new AtomicLong(0);
 
@@ -163,16 +161,23 @@ public class Player implements Runnable {
      * 
      */
     private void toggleToken(int slot) {
-        if (table.tokensLock.playerTryLock()) {
-            if(table.slotToCard[slot] == null){
-                table.tokensLock.playerUnlock();
-                return;    
+        // a press on an empty slot is ignored without locking, unless the dealer may be placing a card there
+        long optimistic = table.tokensLock.optimisticRead(slot);
+        if (table.cardAt(slot) == Table.EMPTY && table.tokensLock.validate(slot, optimistic)) return;
+
+        long stamp = table.tokensLock.playerLock(slot);
+        if (stamp != 0) {
+            // a card is only playable once the display shows it
+            if(table.cardAt(slot) == Table.EMPTY || !table.isShown(slot)){
+                table.tokensLock.playerUnlock(slot, stamp);
+                return;
             }
             boolean addRequest = table.toggleToken(id, slot);
-            table.tokensLock.playerUnlock();
+            long version = table.snapshot().version;
+            table.tokensLock.playerUnlock(slot, stamp);
             if (addRequest) {
                 synchronized(this) {
-                    dealer.addSetRequest(id);
+                    dealer.addSetRequest(id, version);
                     try{ wait(); } catch (InterruptedException ignored) {}
                     penalty();
                 }
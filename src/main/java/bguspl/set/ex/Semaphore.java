@@ -2,6 +2,12 @@ package bguspl.set.ex;
 import java.util.concurrent.atomic.AtomicInteger;
 import bguspl.set.Env;
 
+/**
+ * The former lock between the players and the dealer, kept for TableLockBenchmark.
+ *
+ * @deprecated players' presses fail while the dealer holds it and every unlock wakes the dealer; use TableLock.
+ */
+@Deprecated
 public class Semaphore {
     public AtomicInteger activePlayers;
     public AtomicInteger dealerState; //1: active. -1: waiting. 0: not using
@@ -5,10 +5,11 @@ import bguspl.set.Env;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.UIDefaults.ActiveValue;
 
@@ -16,7 +17,9 @@ import javax.swing.UIDefaults.ActiveValue;
  * This class contains the data that is visible to the player.
  *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
- * @inv env.config.featureSize >= playerTokens.size() >= for playerTokens in playersTokens
+ * @inv env.config.featureSize >= countTokens(player) for every player
+ * @inv playerTokens has the bit of slot s for player p iff slotPlayers has the bit of player p for slot s
+ * @inv snapshot() reflects every change to the cards or tokens that returned before it was read
  *
  */
 public class Table {
@@ -27,34 +30,77 @@ public class Table {
     private final Env env;
     
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * The value of an empty slot in slotToCard, and of a card that is not on the table in cardToSlot.
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    public static final int EMPTY = -1;
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * Mapping between a slot and the card placed in it (EMPTY if none).
+     * Atomic so the player threads can read it without locking and still see the dealer's latest placements.
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    protected final AtomicIntegerArray slotToCard; // card per slot (if any)
 
     /**
-     * Maintaining token placements for all the players
+     * Mapping between a card and the slot it is in (EMPTY if none).
      */
-    public ArrayList<ArrayList<Integer>> playersTokens;
-    public Semaphore tokensLock;
+    protected final AtomicIntegerArray cardToSlot; // slot per card (if any)
+
+    /**
+     * The token placements of all the players, as a mask of slots per player: the mask of player p is in
+     * [p * slotWords, (p + 1) * slotWords), with slot s as bit s % 64 of its word s / 64.
+     * Toggled by compare-and-set, so players toggling tokens never wait for each other.
+     */
+    private final AtomicLongArray playerTokens;
+    private final int slotWords;
+
+    /**
+     * The players holding a token on each slot, in the same form: the mask of slot s is in
+     * [s * playerWords, (s + 1) * playerWords), with player p as bit p % 64 of its word p / 64.
+     */
+    private final AtomicLongArray slotPlayers;
+    private final int playerWords;
+
+    /**
+     * The latest snapshot of the table, replaced (copy-on-write) after every change to the cards or tokens.
+     */
+    private final AtomicReference<TableSnapshot> snapshot;
+
+    /**
+     * Keeps the dealer from changing the cards while players toggle tokens.
+     */
+    public final TableLock tokensLock;
+
+    /**
+     * Shows the changes to the table on the display, after they are made.
+     */
+    private final TableRenderer renderer;
+
+    /**
+     * The legal sets among the cards on the table, each as the sorted slots of its cards.
+     * Updated on every card placement/removal, guarded by its own monitor.
+     */
+    private final List<int[]> tableSets;
 
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (EMPTY if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (EMPTY if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, AtomicIntegerArray slotToCard, AtomicIntegerArray cardToSlot) {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        this.playersTokens = new ArrayList<ArrayList<Integer>>();
-        this.tokensLock = new Semaphore();
+        this.slotWords = (env.config.tableSize + Long.SIZE - 1) / Long.SIZE;
+        this.playerWords = (env.config.players + Long.SIZE - 1) / Long.SIZE;
+        this.playerTokens = new AtomicLongArray(env.config.players * slotWords);
+        this.slotPlayers = new AtomicLongArray(env.config.tableSize * playerWords);
+        this.tokensLock = new TableLock(env.config.tableSize, env.config.tokenWaitMillis);
+        this.tableSets = new ArrayList<int[]>();
+        this.snapshot = new AtomicReference<>(new TableSnapshot(0, toArray(slotToCard), new long[env.config.tableSize],
+                new long[playerTokens.length()], slotWords));
+        this.renderer = new TableRenderer(env, snapshot::get);
     }
 
     /**
@@ -64,22 +110,204 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, emptyArray(env.config.tableSize), emptyArray(env.config.deckSize));
+    }
+
+    private static AtomicIntegerArray emptyArray(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, EMPTY);
+        return new AtomicIntegerArray(array);
+    }
+
+    private static int[] toArray(AtomicIntegerArray atomic) {
+        int[] array = new int[atomic.length()];
+        for (int i = 0; i < array.length; ++i)
+            array[i] = atomic.get(i);
+        return array;
+    }
+
+    /**
+     * @return - the latest snapshot of the table.
+     */
+    public TableSnapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Publishes a snapshot of the table as it is now, after the dealer changed the cards. The snapshot is built
+     * after the current one is read, and only published if no other change was published meanwhile, so the latest
+     * snapshot always includes every change made before its publication.
+     *
+     * @param changedSlots - the slots whose cards changed.
+     */
+    private void publish(int... changedSlots) {
+        publish(changedSlots, changedSlots.length);
+    }
+
+    /**
+     * @param changedSlots - the slots whose cards changed, in changedSlots[0..count).
+     * @param count        - the number of slots that changed.
+     */
+    private void publish(int[] changedSlots, int count) {
+        TableSnapshot current, next;
+        do {
+            current = snapshot.get();
+            long version = current.version + 1;
+            long[] slotVersions = new long[env.config.tableSize];
+            for (int slot = 0; slot < slotVersions.length; ++slot)
+                slotVersions[slot] = current.slotVersion(slot);
+            for (int i = 0; i < count; ++i)
+                slotVersions[changedSlots[i]] = version;
+            long[] tokens = new long[playerTokens.length()];
+            for (int i = 0; i < tokens.length; ++i)
+                tokens[i] = playerTokens.get(i);
+            next = new TableSnapshot(version, toArray(slotToCard), slotVersions, tokens, slotWords);
+        } while (!snapshot.compareAndSet(current, next));
+        renderer.changed();
+    }
+
+    /**
+     * Publishes a snapshot after a change to the tokens only. The cards are taken from the current snapshot rather
+     * than the table, so a player never publishes half of a batch the dealer is placing or removing.
+     */
+    private void publishTokens() {
+        TableSnapshot current, next;
+        do {
+            current = snapshot.get();
+            long[] tokens = new long[playerTokens.length()];
+            for (int i = 0; i < tokens.length; ++i)
+                tokens[i] = playerTokens.get(i);
+            next = current.withTokens(tokens);
+        } while (!snapshot.compareAndSet(current, next));
+        renderer.changed();
+    }
+
+    /**
+     * A card is shown tableDelayMillis after it is placed (see TableRenderer); players only place tokens on cards
+     * they can see.
+     *
+     * @param slot - a slot on the table.
+     * @return - true iff the display shows the slot's latest card (or lack of one).
+     */
+    public boolean isShown(int slot) {
+        return renderer.shown().slotVersion(slot) == snapshot().slotVersion(slot);
+    }
+
+    /**
+     * Waits for the display to show every change made to the table so far, and stops updating it.
+     */
+    public void stopRendering() {
+        renderer.stop();
+    }
+
+    /**
+     * @param slot - a slot on the table.
+     * @return - the card in the slot, or EMPTY if there is none.
+     */
+    public int cardAt(int slot) {
+        return slotToCard.get(slot);
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - the slot the card is in, or EMPTY if it is not on the table.
+     */
+    public int slotOf(int card) {
+        return cardToSlot.get(card);
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        TableSnapshot table = snapshot();
+        getSets().forEach(slots -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+            int[] set = Arrays.stream(slots).map(table::cardAt).sorted().toArray();
             int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
+            System.out.println(sb.append("slots: ").append(Arrays.toString(slots)).append(" features: ").append(Arrays.deepToString(features)));
         });
     }
 
+    /**
+     * Count the legal sets among the cards currently on the table.
+     *
+     * @return - the number of sets on the table.
+     */
+    public int countSets() {
+        synchronized (tableSets) { return tableSets.size(); }
+    }
+
+    /**
+     * Returns one of the legal sets currently on the table.
+     *
+     * @return - the sorted slots of the set's cards, or null if there is no set on the table.
+     */
+    public int[] anySet() {
+        synchronized (tableSets) { return tableSets.isEmpty() ? null : tableSets.get(0); }
+    }
+
+    /**
+     * Returns all the legal sets currently on the table.
+     *
+     * @return - a list of the sorted slots of each set's cards.
+     */
+    public List<int[]> getSets() {
+        synchronized (tableSets) { return new ArrayList<int[]>(tableSets); }
+    }
+
+    /**
+     * Adds to tableSets every legal set formed by the card in the given slot and other cards on the table.
+     * With 3 or more cards per set, all the cards but the last are chosen and the last is their unique completion,
+     * so this takes O(table ^ (featureSize - 2)).
+     *
+     * @param slot - the slot of the newly placed card.
+     */
+    private void addSets(int slot) {
+        int[] cards = new int[env.config.featureSize];
+        int[] slots = new int[env.config.featureSize];
+        cards[0] = slotToCard.get(slot);
+        slots[0] = slot;
+        int chosen = env.config.featureSize >= 3 ? env.config.featureSize - 1 : env.config.featureSize;
+        addSets(cards, slots, 1, chosen, 0);
+    }
+
+    private void addSets(int[] cards, int[] slots, int depth, int chosen, int from) {
+        if (depth == chosen) {
+            if (chosen < cards.length) {
+                int completion = env.util.completeSet(cards);
+                if (completion < 0) return;
+                // the other cards are chosen in increasing slot order, so each set is added once
+                int completionSlot = cardToSlot.get(completion);
+                if (completionSlot == EMPTY || completionSlot == slots[0] || completionSlot < slots[depth - 1]) return;
+                cards[depth] = completion;
+                slots[depth] = completionSlot;
+            }
+            else if (!env.util.testSet(cards)) return;
+            int[] set = slots.clone();
+            Arrays.sort(set);
+            synchronized (tableSets) { tableSets.add(set); }
+            return;
+        }
+        for (int other = from; other < slotToCard.length(); ++other) {
+            if (other == slots[0] || slotToCard.get(other) == EMPTY) continue;
+            cards[depth] = slotToCard.get(other);
+            slots[depth] = other;
+            addSets(cards, slots, depth + 1, chosen, other + 1);
+        }
+    }
+
+    /**
+     * Removes from tableSets every set that includes the given slot.
+     *
+     * @param slot - the slot whose card is removed.
+     */
+    private void removeSets(int slot) {
+        synchronized (tableSets) {
+            tableSets.removeIf(set -> Arrays.binarySearch(set, slot) >= 0);
+        }
+    }
+
     /**
      * Count the number of cards currently on the table.
      *
@@ -87,101 +315,202 @@ public class Table {
      */
     public int countCards() {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int slot = 0; slot < slotToCard.length(); ++slot)
+            if (slotToCard.get(slot) != EMPTY)
                 ++cards;
         return cards;
     }
 
     /**
-     * Places a card on the table in a grid slot.
+     * Places a card on the table in a grid slot. The display shows it tableDelayMillis later (see TableRenderer).
      * @param card - the card id to place in the slot.
      * @param slot - the slot in which the card should be placed.
      *
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+        if (slotToCard.get(slot) != EMPTY) removeSets(slot);
+        cardToSlot.set(card, slot);
+        slotToCard.set(slot, card);
+        addSets(slot);
+        publish(slot);
+    }
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
-        env.ui.placeCard(card, slot);
+    /**
+     * Places several cards on the table, animating the whole batch as one update of the display.
+     * Assumes the caller holds the dealer's side of tokensLock for the slots, so no player sees the batch half-placed.
+     * @param cards - the card ids to place.
+     * @param slots - the slot in which each card should be placed.
+     *
+     * @post - every card placed is on the table, in its assigned slot.
+     */
+    public void placeCards(int[] cards, int[] slots) {
+        placeCards(cards, slots, cards.length);
     }
 
     /**
-     * Removes a card from a grid slot on the table.
+     * Places the first count cards of an array on the table (see placeCards(int[], int[])), so the caller can deal
+     * from buffers it reuses.
+     * @param cards - the card ids to place.
+     * @param slots - the slot in which each card should be placed.
+     * @param count - the number of cards to place.
+     */
+    public void placeCards(int[] cards, int[] slots, int count) {
+        if (count == 0) return;
+        for (int i = 0; i < count; ++i) {
+            int previous = slotToCard.get(slots[i]);
+            if (previous != EMPTY) {
+                removeSets(slots[i]);
+                cardToSlot.set(previous, EMPTY);
+            }
+            cardToSlot.set(cards[i], slots[i]);
+            slotToCard.set(slots[i], cards[i]);
+            addSets(slots[i]);
+        }
+        publish(slots, count);
+    }
+
+    /**
+     * Removes the cards from several grid slots, animating the whole batch as one update of the display.
+     * Assumes the caller holds the dealer's side of tokensLock for the slots, so no player sees the batch half-removed.
+     * @param slots - the slots from which to remove the cards (empty slots are left empty).
+     */
+    public void removeCards(int[] slots) {
+        removeCards(slots, slots.length);
+    }
+
+    /**
+     * Removes the cards from the first count slots of an array (see removeCards(int[])), so the caller can pass a
+     * buffer it reuses.
+     * @param slots - the slots from which to remove the cards.
+     * @param count - the number of slots.
+     */
+    public void removeCards(int[] slots, int count) {
+        boolean removed = false;
+        for (int i = 0; i < count; ++i) {
+            int card = slotToCard.get(slots[i]);
+            if (card == EMPTY) continue;
+            removeSets(slots[i]);
+            slotToCard.set(slots[i], EMPTY);
+            cardToSlot.set(card, EMPTY);
+            removed = true;
+        }
+        if (removed) publish(slots, count);
+    }
+
+    /**
+     * Removes a card from a grid slot on the table. The display shows it tableDelayMillis later.
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
-        if (slotToCard[slot] != null) {
-            int card = slotToCard[slot];
-            cardToSlot[card] = null;
-            slotToCard[slot] = null;
-            env.ui.removeCard(slot);
+        int card = slotToCard.get(slot);
+        if (card != EMPTY) {
+            removeSets(slot);
+            slotToCard.set(slot, EMPTY);
+            cardToSlot.set(card, EMPTY);
+            publish(slot);
         }
     }
 
     /**
      * Toggles token placement for a player.
-     * Assumes the function call is wrapped in the semaphore's lock. 
+     * Assumes the function call is wrapped in the player's side of tokensLock for the slot, which keeps the dealer from
+     * changing the slot meanwhile; other players may toggle tokens concurrently.
      * @param player - the player's id.
      * @param slot   - the slot on which to toggle the token.
      * @return       - whether (env.config.featureSize) token are now placed and the dealer should be called.
      */
     public boolean toggleToken(int player, int slot){
-        List<Integer> tokenPlacements;
-        tokenPlacements = playersTokens.get(player);
-        if (tokenPlacements.contains(slot)) {
-            tokenPlacements.remove(tokenPlacements.indexOf(slot));
+        int index = player * slotWords + slot / Long.SIZE;
+        long bit = 1L << slot;
+        long tokens;
+        do {
+            tokens = playerTokens.get(index);
+            if ((tokens & bit) == 0 && countTokens(player) >= env.config.featureSize) return false;
+        } while (!playerTokens.compareAndSet(index, tokens, tokens ^ bit));
+        slotPlayers.accumulateAndGet(slot * playerWords + player / Long.SIZE, 1L << player, (mask, playerBit) -> mask ^ playerBit);
+
+        if ((tokens & bit) != 0) {
             removeToken(player, slot);
+            return false;
         }
-        else if (tokenPlacements.size() < env.config.featureSize) {
-            tokenPlacements.add(slot);
-            placeToken(player, slot);
-            if (tokenPlacements.size() == env.config.featureSize) return true;
+        placeToken(player, slot);
+        return countTokens(player) == env.config.featureSize;
+    }
+
+    /**
+     * Removes the tokens of all the players from a slot, using the slot's mask of players rather than
+     * looking through every player's tokens.
+     * @param slot - the slot from which to remove the tokens.
+     */
+    public void clearTokens(int slot) {
+        boolean removed = false;
+        for (int word = 0; word < playerWords; ++word) {
+            for (long players = slotPlayers.getAndSet(slot * playerWords + word, 0); players != 0; players &= players - 1) {
+                int player = word * Long.SIZE + Long.numberOfTrailingZeros(players);
+                playerTokens.accumulateAndGet(player * slotWords + slot / Long.SIZE, ~(1L << slot), (mask, kept) -> mask & kept);
+                removed = true;
+            }
         }
-        return false;
+        if (removed) publishTokens();
+    }
+
+    /**
+     * @param player - the player's id.
+     * @return - the number of tokens the player has placed.
+     */
+    public int countTokens(int player) {
+        int count = 0;
+        for (int word = 0; word < slotWords; ++word)
+            count += Long.bitCount(playerTokens.get(player * slotWords + word));
+        return count;
     }
 
     /**
-     * Places a player token on a grid slot.
+     * @param player - the player's id.
+     * @return - the slots on which the player has placed tokens, in increasing order.
+     */
+    public int[] getTokens(int player) {
+        int[] slots = new int[env.config.tableSize];
+        int count = 0;
+        for (int word = 0; word < slotWords; ++word)
+            for (long tokens = playerTokens.get(player * slotWords + word); tokens != 0; tokens &= tokens - 1)
+                slots[count++] = word * Long.SIZE + Long.numberOfTrailingZeros(tokens);
+        return Arrays.copyOf(slots, count);
+    }
+
+    /**
+     * Places a player token on a grid slot: publishes the token toggled by toggleToken, for the display to show.
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
      */
     public void placeToken(int player, int slot) {
-        env.ui.placeToken(player, slot);
+        publishTokens();
     }
 
     /**
-     * Removes a token of a player from a grid slot.
+     * Removes a token of a player from a grid slot: publishes the token toggled by toggleToken, for the display to show.
      * @param player - the player the token belongs to.
      * @param slot   - the slot from which to remove the token.
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        env.ui.removeToken(player, slot);
+        publishTokens();
         return false;
     }
 
     /**
-     * Filters out the null cards from the table
-     * @return an integer array of cards that are on the table
+     * Writes the cards that are on the table to an array.
+     * @param cards  - the array to write to, with room for env.config.tableSize cards from offset.
+     * @param offset - the index to write the first card at.
+     * @return the number of cards written
      */
-    public Integer[] getCardsOnTable(){
-        ArrayList<Integer> cards_ = new ArrayList<Integer>();
-        for(Integer slot: slotToCard){
-            if (slot == null) continue;
-            cards_.add(slot);
-        }
-        Integer[] cards = new Integer[cards_.size()];
-        for(int i = 0; i < cards.length; i++){
-            cards[i] = cards_.get(i);
+    public int getCardsOnTable(int[] cards, int offset){
+        int count = 0;
+        for (int slot = 0; slot < slotToCard.length(); ++slot) {
+            int card = slotToCard.get(slot);
+            if (card != EMPTY) cards[offset + count++] = card;
         }
-        return cards;
+        return count;
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The lock between the players placing tokens and the dealer changing the cards on the table, striped per slot.
+ * Players share a slot (a read lock, as their token toggles are atomic on their own) while the dealer has the slots
+ * it changes to itself (a write lock), so the rest of the table stays playable. Built on StampedLocks: a waiting
+ * dealer holds off new players and is parked until the last player leaves, and players wait a bounded time for
+ * the dealer rather than dropping their key press.
+ *
+ * @inv the dealer holds the lock of slot s iff dealerStamps[s] != 0
+ */
+public class TableLock {
+
+    /**
+     * The lock of each slot.
+     */
+    private final StampedLock[] stripes;
+
+    /**
+     * The maximum number of milliseconds a player waits for the dealer.
+     */
+    private final long playerWaitMillis;
+
+    /**
+     * The stamps of the dealer's write locks (0 if not held). Only used by the dealer thread.
+     */
+    private final long[] dealerStamps;
+
+    /**
+     * @param slots            - the number of slots on the table.
+     * @param playerWaitMillis - the maximum number of milliseconds a player waits for the dealer.
+     */
+    public TableLock(int slots, long playerWaitMillis) {
+        this.stripes = new StampedLock[slots];
+        for (int slot = 0; slot < slots; ++slot)
+            stripes[slot] = new StampedLock();
+        this.playerWaitMillis = playerWaitMillis;
+        this.dealerStamps = new long[slots];
+    }
+
+    /**
+     * Starts an optimistic read of a slot, without locking.
+     *
+     * @param slot - the slot to read.
+     * @return - a stamp to validate once done reading, 0 if the dealer is changing the slot.
+     */
+    public long optimisticRead(int slot) {
+        return stripes[slot].tryOptimisticRead();
+    }
+
+    /**
+     * @param slot  - the slot read.
+     * @param stamp - a stamp from optimisticRead.
+     * @return - true iff the dealer did not change the slot since the stamp was taken.
+     */
+    public boolean validate(int slot, long stamp) {
+        return stripes[slot].validate(stamp);
+    }
+
+    /**
+     * Locks a slot for a player, waiting up to playerWaitMillis for the dealer to finish with it.
+     *
+     * @param slot - the slot to lock.
+     * @return - a stamp to pass to playerUnlock, or 0 if the wait timed out or was interrupted.
+     */
+    public long playerLock(int slot) {
+        try {
+            return stripes[slot].tryReadLock(playerWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /**
+     * @param slot  - the slot locked.
+     * @param stamp - the stamp returned by playerLock.
+     */
+    public void playerUnlock(int slot, long stamp) {
+        stripes[slot].unlockRead(stamp);
+    }
+
+    /**
+     * Locks some of the slots for the dealer, waiting for the players holding them to finish.
+     * The slots are locked in increasing order.
+     *
+     * @param slots - the slots to lock (none of which the dealer holds already).
+     */
+    public void dealerLock(int[] slots) {
+        int[] sorted = slots.clone();
+        Arrays.sort(sorted);
+        for (int slot : sorted)
+            dealerStamps[slot] = stripes[slot].writeLock();
+    }
+
+    /**
+     * Locks the whole table for the dealer (e.g. for a reshuffle).
+     */
+    public void dealerLock() {
+        for (int slot = 0; slot < stripes.length; ++slot)
+            dealerStamps[slot] = stripes[slot].writeLock();
+    }
+
+    /**
+     * Unlocks every slot the dealer holds.
+     */
+    public void dealerUnlock() {
+        for (int slot = 0; slot < stripes.length; ++slot) {
+            if (dealerStamps[slot] != 0) {
+                stripes[slot].unlockWrite(dealerStamps[slot]);
+                dealerStamps[slot] = 0;
+            }
+        }
+    }
+}
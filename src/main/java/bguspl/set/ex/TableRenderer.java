@@ -0,0 +1,151 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * The render stage of the table: brings the display up to date with the table's latest snapshot, on its own thread.
+ * The table publishes its changes and returns right away, so the dealer does not wait for the animation (nor hold
+ * its locks meanwhile) before checking the next claims.
+ * Rather than queueing an update per change, the renderer compares the snapshot it last showed with the latest one
+ * and shows the difference; a card change is shown tableDelayMillis after it is seen, together with every change
+ * made meanwhile. So the work pending is at most one update per slot, and no caller ever waits for the display.
+ */
+public class TableRenderer {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The latest snapshot of the table.
+     */
+    private final Supplier<TableSnapshot> table;
+
+    /**
+     * The snapshot the display shows.
+     */
+    private volatile TableSnapshot shown;
+
+    private volatile boolean stopped;
+
+    /**
+     * The rendering thread, started on the first change.
+     */
+    private Thread thread;
+
+    /**
+     * @param env   - the game environment object.
+     * @param table - the latest snapshot of the table; the display starts out showing its current value.
+     */
+    public TableRenderer(Env env, Supplier<TableSnapshot> table) {
+        this.env = env;
+        this.table = table;
+        this.shown = table.get();
+    }
+
+    /**
+     * @return - the snapshot the display shows.
+     */
+    public TableSnapshot shown() {
+        return shown;
+    }
+
+    /**
+     * Tells the renderer the table changed. Never waits.
+     */
+    public void changed() {
+        Thread renderer;
+        synchronized (this) {
+            if (stopped) return;
+            if (thread == null) {
+                thread = new Thread(this::run, "table-renderer");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            renderer = thread;
+        }
+        LockSupport.unpark(renderer);
+    }
+
+    /**
+     * Stops rendering once the display shows the latest snapshot, and waits for it.
+     */
+    public void stop() {
+        Thread renderer;
+        synchronized (this) {
+            stopped = true;
+            renderer = thread;
+        }
+        if (renderer == null) return;
+        LockSupport.unpark(renderer);
+        try {
+            renderer.join();
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            TableSnapshot target = table.get();
+            if (target == shown) {
+                if (stopped) return;
+                LockSupport.park(this);
+                continue;
+            }
+            if (env.config.tableDelayMillis > 0 && cardsChanged(shown, target)) {
+                try {
+                    Thread.sleep(env.config.tableDelayMillis);
+                } catch (InterruptedException ignored) {}
+                target = table.get();
+            }
+            show(target);
+        }
+    }
+
+    private boolean cardsChanged(TableSnapshot from, TableSnapshot to) {
+        for (int slot = 0; slot < env.config.tableSize; ++slot)
+            if (from.slotVersion(slot) != to.slotVersion(slot))
+                return true;
+        return false;
+    }
+
+    /**
+     * Shows the difference between the snapshot the display shows and a later one, then marks the later one shown.
+     * Tokens are removed before the cards, and placed after them.
+     */
+    private void show(TableSnapshot target) {
+        TableSnapshot from = shown;
+        int[] removed = new int[env.config.tableSize], placedSlots = new int[env.config.tableSize];
+        int[] placed = new int[env.config.tableSize];
+        int removedCount = 0, placedCount = 0;
+        for (int slot = 0; slot < env.config.tableSize; ++slot) {
+            if (from.slotVersion(slot) == target.slotVersion(slot)) continue;
+            int card = target.cardAt(slot);
+            if (card == Table.EMPTY) {
+                if (from.cardAt(slot) != Table.EMPTY) removed[removedCount++] = slot;
+            }
+            else {
+                placed[placedCount] = card;
+                placedSlots[placedCount++] = slot;
+            }
+        }
+
+        for (int player = 0; player < env.config.players; ++player)
+            for (int slot = 0; slot < env.config.tableSize; ++slot)
+                if (from.hasToken(player, slot) && !target.hasToken(player, slot))
+                    env.ui.removeToken(player, slot);
+        if (removedCount > 0) env.ui.removeCards(Arrays.copyOf(removed, removedCount));
+        if (placedCount > 0) env.ui.placeCards(Arrays.copyOf(placed, placedCount), Arrays.copyOf(placedSlots, placedCount));
+        for (int player = 0; player < env.config.players; ++player)
+            for (int slot = 0; slot < env.config.tableSize; ++slot)
+                if (!from.hasToken(player, slot) && target.hasToken(player, slot))
+                    env.ui.placeToken(player, slot);
+        shown = target;
+    }
+}
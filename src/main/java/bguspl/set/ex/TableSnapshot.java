@@ -0,0 +1,110 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+
+/**
+ * An immutable view of the table as of one committed change: the card in each slot and the tokens of each player.
+ * Table publishes a new snapshot, with the next version, on every change, so a reader gets a consistent table from
+ * a single volatile read and without locking.
+ *
+ * @inv slotVersion(slot) <= version for every slot
+ */
+public final class TableSnapshot {
+
+    /**
+     * The number of changes to the table before this snapshot.
+     */
+    public final long version;
+
+    /**
+     * The card in each slot (Table.EMPTY if none).
+     */
+    private final int[] slotToCard;
+
+    /**
+     * The version in which the card in each slot was last placed or removed.
+     */
+    private final long[] slotVersions;
+
+    /**
+     * The tokens of each player as a mask of slots, in the form of Table.playerTokens.
+     */
+    private final long[] playerTokens;
+    private final int slotWords;
+
+    TableSnapshot(long version, int[] slotToCard, long[] slotVersions, long[] playerTokens, int slotWords) {
+        this.version = version;
+        this.slotToCard = slotToCard;
+        this.slotVersions = slotVersions;
+        this.playerTokens = playerTokens;
+        this.slotWords = slotWords;
+    }
+
+    /**
+     * @param playerTokens - the tokens of each player after a change to the tokens only.
+     * @return - the next snapshot, sharing this one's cards.
+     */
+    TableSnapshot withTokens(long[] playerTokens) {
+        return new TableSnapshot(version + 1, slotToCard, slotVersions, playerTokens, slotWords);
+    }
+
+    /**
+     * @param slot - a slot on the table.
+     * @return - the card in the slot, or Table.EMPTY if there is none.
+     */
+    public int cardAt(int slot) {
+        return slotToCard[slot];
+    }
+
+    /**
+     * @return - the number of cards on the table.
+     */
+    public int countCards() {
+        int cards = 0;
+        for (int card : slotToCard)
+            if (card != Table.EMPTY)
+                ++cards;
+        return cards;
+    }
+
+    /**
+     * @param slot - a slot on the table.
+     * @return - the version in which the card in the slot was last placed or removed.
+     */
+    public long slotVersion(int slot) {
+        return slotVersions[slot];
+    }
+
+    /**
+     * @param slots   - slots on the table.
+     * @param version - the version of an earlier snapshot.
+     * @return - true iff none of the slots changed cards since that snapshot.
+     */
+    public boolean isUnchangedSince(int[] slots, long version) {
+        for (int slot : slots)
+            if (slotVersions[slot] > version) return false;
+        return true;
+    }
+
+    /**
+     * @param player - the player's id.
+     * @param slot   - a slot on the table.
+     * @return - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (playerTokens[player * slotWords + slot / Long.SIZE] & 1L << slot) != 0;
+    }
+
+    /**
+     * @param player - the player's id.
+     * @return - the slots on which the player has placed tokens, in increasing order.
+     */
+    public int[] getTokens(int player) {
+        int[] slots = new int[slotToCard.length];
+        int count = 0;
+        for (int word = 0; word < slotWords; ++word)
+            for (long tokens = playerTokens[player * slotWords + word]; tokens != 0; tokens &= tokens - 1)
+                slots[count++] = word * Long.SIZE + Long.numberOfTrailingZeros(tokens);
+        return Arrays.copyOf(slots, count);
+    }
+}
@@ -0,0 +1,81 @@
+package bguspl.set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Sweeps findSets over the number of cards searched and the number of parallel workers (0 for a sequential search),
+ * on a deck of 3 ^ 6 cards. Run like UtilImplBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindSetsBenchmark {
+
+    @Param({"12", "27", "81", "243", "729"})
+    public int cards;
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int workers;
+
+    @Param({"1", "2147483647"})
+    public int count;
+
+    private ForkJoinPool pool;
+    private UtilImpl util;
+    private List<Integer> deck;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.put("FeatureCount", "6");
+        properties.put("ParallelSearchThreshold", workers == 0 ? "0" : "1");
+        Config config = new Config(Logger.getAnonymousLogger(), properties);
+        pool = new ForkJoinPool(Math.max(workers, 1));
+        util = new UtilImpl(config, pool);
+        deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(cards));
+        deck = deck.subList(0, cards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<int[]> findSets() {
+        return util.findSets(deck, count);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FindSetsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
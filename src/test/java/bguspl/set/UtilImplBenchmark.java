@@ -0,0 +1,123 @@
+package bguspl.set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Micro benchmarks of the set detection utilities.
+ * Run with: mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * and then: java -cp target/test-classes:target/classes:$(cat cp.txt) bguspl.set.UtilImplBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilImplBenchmark {
+
+    private static final int CANDIDATES = 1024;
+
+    private Config config;
+    private UtilImpl util;
+    private int[][] candidates;
+    private int[] flatCandidates;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        config = new Config(Logger.getAnonymousLogger(), new Properties());
+        util = new UtilImpl(config);
+        Random random = new Random(0);
+        candidates = new int[CANDIDATES][];
+        for (int i = 0; i < CANDIDATES; ++i)
+            candidates[i] = random.ints(0, config.deckSize).distinct().limit(config.featureSize).toArray();
+        flatCandidates = Arrays.stream(candidates).flatMapToInt(Arrays::stream).toArray();
+    }
+
+    private int[] nextCandidate() {
+        next = (next + 1) % CANDIDATES;
+        return candidates[next];
+    }
+
+    /**
+     * The testSet implementation before the feature table: copies the cards and decodes their features per call.
+     */
+    private boolean testSetDecoding(int[] cards) {
+        cards = Arrays.copyOf(cards, cards.length);
+        int[][] features = new int[cards.length][config.featureCount];
+        for (int j = 0; j < cards.length; ++j)
+            for (int i = config.featureCount - 1, card = cards[j]; i >= 0; --i, card /= config.featureSize)
+                features[j][i] = card % config.featureSize;
+        for (int i = 0; i < config.featureCount; ++i) {
+            boolean sameSame = true, butDifferent = true;
+            for (int j = 1; j < features.length; ++j)
+                if (features[0][i] != features[j][i]) {
+                    sameSame = false;
+                    break;
+                }
+            for (int j = 1; j < features.length; ++j)
+                for (int k = j; k < features.length; ++k)
+                    if (features[j - 1][i] == features[k][i]) {
+                        butDifferent = false;
+                        break;
+                    }
+            if (sameSame == butDifferent) return false;
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean testSetDecoding() {
+        return testSetDecoding(nextCandidate());
+    }
+
+    @Benchmark
+    public boolean testSet() {
+        return util.testSet(nextCandidate());
+    }
+
+    @Benchmark
+    public boolean testPackedSet() {
+        int[] cards = nextCandidate();
+        long first = util.cardToPacked(cards[0]), second = util.cardToPacked(cards[1]), third = util.cardToPacked(cards[2]);
+        return util.testPackedSet(first | second | third, first & second & third);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CANDIDATES)
+    public long[] testSetLoop() {
+        long[] legal = new long[CANDIDATES / Long.SIZE];
+        for (int i = 0; i < CANDIDATES; ++i)
+            if (util.testSet(candidates[i])) legal[i / Long.SIZE] |= 1L << i;
+        return legal;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CANDIDATES)
+    public long[] testSets() {
+        return util.testSets(flatCandidates, CANDIDATES);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(UtilImplBenchmark.class.getSimpleName()).build()).run();
+    }
+}
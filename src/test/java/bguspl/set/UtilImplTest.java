@@ -0,0 +1,255 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UtilImplTest {
+
+    private static UtilImpl createUtil(int featureSize, int featureCount, int parallelSearchThreshold) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("ParallelSearchThreshold", Integer.toString(parallelSearchThreshold));
+        return new UtilImpl(new Config(Logger.getAnonymousLogger(), properties));
+    }
+
+    private static UtilImpl createUtil(int featureSize, int featureCount) {
+        return createUtil(featureSize, featureCount, 0);
+    }
+
+    private static List<Integer> fullDeck(int featureSize, int featureCount) {
+        return IntStream.range(0, (int) Math.pow(featureSize, featureCount)).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Counts the legal sets among the cards by testing every combination of featureSize cards.
+     */
+    private static int countSetsByCombination(UtilImpl util, List<Integer> cards, int[] chosen, int depth, int from) {
+        if (depth == chosen.length) return util.testSet(chosen.clone()) ? 1 : 0;
+        int sets = 0;
+        for (int i = from; i < cards.size(); ++i) {
+            chosen[depth] = cards.get(i);
+            sets += countSetsByCombination(util, cards, chosen, depth + 1, i + 1);
+        }
+        return sets;
+    }
+
+    private static void assertDistinctLegalSets(UtilImpl util, List<int[]> sets) {
+        Set<List<Integer>> distinct = new HashSet<>();
+        for (int[] set : sets) {
+            assertTrue(util.testSet(set));
+            assertTrue(distinct.add(IntStream.of(set).boxed().collect(Collectors.toList())));
+        }
+    }
+
+    /**
+     * Checks that each feature is all-same or all-different, straight from the feature arrays.
+     */
+    private static boolean testSetByFeatures(UtilImpl util, int[] cards) {
+        int[][] features = util.cardsToFeatures(cards);
+        for (int i = 0; i < features[0].length; ++i) {
+            final int feature = i;
+            long distinct = Arrays.stream(features).mapToInt(card -> card[feature]).distinct().count();
+            if (distinct != 1 && distinct != cards.length) return false;
+        }
+        return true;
+    }
+
+    @Test
+    void testSet_PackedMatchesFeatures() {
+        for (int[] variant : new int[][]{{3, 4}, {4, 3}, {5, 2}, {2, 6}}) {
+            UtilImpl util = createUtil(variant[0], variant[1]);
+            assertTrue(util.isPackable());
+            Random random = new Random(variant[0]);
+            for (int i = 0; i < 10000; ++i) {
+                int[] cards = random.ints(0, (int) Math.pow(variant[0], variant[1])).distinct().limit(variant[0]).toArray();
+                assertEquals(testSetByFeatures(util, cards), util.testSet(cards));
+            }
+        }
+    }
+
+    @Test
+    void testSets_MatchesTestSet() {
+        // 17 values of 4 features do not fit a packed long
+        for (int[] variant : new int[][]{{3, 4}, {4, 3}, {17, 4}}) {
+            int size = variant[0], deckSize = (int) Math.pow(size, variant[1]);
+            UtilImpl util = createUtil(size, variant[1]);
+            Random random = new Random(size);
+            int count = 300;
+            int[] cards = new int[count * size];
+            for (int i = 0; i < count; ++i) {
+                int[] candidate = random.ints(0, deckSize).distinct().limit(size).toArray();
+                if (i % 3 == 0) candidate = allDifferentFirstFeatures(size, variant[1], i % size);
+                System.arraycopy(candidate, 0, cards, i * size, size);
+            }
+            long[] legal = util.testSets(cards, count);
+            assertTrue(Arrays.stream(legal).map(Long::bitCount).sum() >= count / 3);
+            for (int i = 0; i < count; ++i)
+                assertEquals(util.testSet(Arrays.copyOfRange(cards, i * size, (i + 1) * size)), (legal[i / 64] & 1L << i) != 0);
+        }
+    }
+
+    /**
+     * @return - a legal set whose cards differ in the first two features and share the value of the others.
+     */
+    private static int[] allDifferentFirstFeatures(int size, int featureCount, int shared) {
+        int[] cards = new int[size];
+        for (int j = 0; j < size; ++j) {
+            int card = j * size + j;
+            for (int i = 2; i < featureCount; ++i)
+                card = card * size + shared;
+            cards[j] = card;
+        }
+        return cards;
+    }
+
+    @Test
+    void findSets_FullStandardDeck() {
+        UtilImpl util = createUtil(3, 4);
+        List<int[]> sets = util.findSets(fullDeck(3, 4), Integer.MAX_VALUE);
+        assertEquals(1080, sets.size());
+        assertDistinctLegalSets(util, sets);
+    }
+
+    @Test
+    void findSets_ShuffledSubsetMatchesCombinations() {
+        UtilImpl util = createUtil(3, 4);
+        List<Integer> cards = fullDeck(3, 4);
+        Collections.shuffle(cards, new Random(7));
+        cards = cards.subList(0, 20);
+        List<int[]> sets = util.findSets(cards, Integer.MAX_VALUE);
+        assertEquals(countSetsByCombination(util, cards, new int[3], 0, 0), sets.size());
+        assertDistinctLegalSets(util, sets);
+    }
+
+    @Test
+    void findSets_StopsAtCount() {
+        UtilImpl util = createUtil(3, 4);
+        assertEquals(5, util.findSets(fullDeck(3, 4), 5).size());
+    }
+
+    @Test
+    void findSets_ArrayRangeAndSink() {
+        UtilImpl util = createUtil(3, 4);
+        int[] cards = {80, 0, 1, 2, 4, 8, 79};
+        assertEquals(2, util.findSets(cards, 1, 5, Integer.MAX_VALUE).size());
+        List<int[]> sets = new ArrayList<>();
+        assertEquals(2, util.findSets(cards, 1, 5, set -> sets.add(set.clone())));
+        assertDistinctLegalSets(util, sets);
+        assertEquals(1, util.findSets(cards, 1, 5, set -> false));
+        assertEquals(0, util.findSets(cards, 1, 2, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void catalogue_StandardDeck() {
+        UtilImpl util = createUtil(3, 4);
+        SetCatalogue catalogue = util.catalogue();
+        assertEquals(1080, catalogue.size());
+        for (int card = 0; card < 81; ++card)
+            assertEquals(40, catalogue.setsOf(card).length);
+        long[] cards = {-1L, (1L << 17) - 1};
+        assertEquals(1080, util.findSets(cards, Integer.MAX_VALUE).size());
+        cards = new long[]{1L << 0 | 1L << 1 | 1L << 2 | 1L << 4 | 1L << 8, 1L << (79 - 64)};
+        List<int[]> sets = util.findSets(cards, Integer.MAX_VALUE);
+        assertEquals(2, sets.size());
+        assertDistinctLegalSets(util, sets);
+        assertEquals(1, util.findSets(cards, 1).size());
+    }
+
+    @Test
+    void findSets_MaskWithoutCatalogue() {
+        UtilImpl util = createUtil(3, 4, 0);
+        Properties properties = new Properties();
+        properties.put("SetCatalogueMaxSets", "0");
+        UtilImpl uncatalogued = new UtilImpl(new Config(Logger.getAnonymousLogger(), properties));
+        assertEquals(null, uncatalogued.catalogue());
+        long[] cards = {0x5555_5555_5555_5555L, 0x5555L};
+        assertEquals(util.findSets(cards, Integer.MAX_VALUE).size(), uncatalogued.findSets(cards, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void catalogue_MappedMatchesInMemory(@TempDir Path directory) throws IOException {
+        SetCatalogue inMemory = createUtil(3, 4).catalogue();
+        Properties properties = new Properties();
+        properties.put("SetCatalogueMaxSets", "0");
+        properties.put("SetCatalogueDirectory", directory.toString());
+        UtilImpl util = new UtilImpl(new Config(Logger.getAnonymousLogger(), properties));
+        Path file = directory.resolve(SetCatalogue.fileName(3, 4));
+        // the catalogue is only generated by the first query that needs it
+        assertFalse(Files.exists(file));
+        SetCatalogue mapped = util.catalogue();
+        assertTrue(Files.isRegularFile(file));
+
+        assertEquals(inMemory.size(), mapped.size());
+        for (int id = 0; id < mapped.size(); ++id)
+            assertArrayEquals(inMemory.set(id), mapped.set(id));
+        for (int card = 0; card < 81; ++card)
+            assertEquals(40, mapped.setsOf(card).length);
+        long[] cards = {0x5555_5555_5555_5555L, 0x5555L};
+        assertEquals(createUtil(3, 4).findSets(cards, Integer.MAX_VALUE).size(), util.findSets(cards, Integer.MAX_VALUE).size());
+        assertDistinctLegalSets(util, util.findSets(cards, Integer.MAX_VALUE));
+
+        // the next game maps the same file rather than generating it again
+        FileTime generated = Files.getLastModifiedTime(file);
+        assertEquals(mapped.size(), new UtilImpl(new Config(Logger.getAnonymousLogger(), properties)).catalogue().size());
+        assertEquals(generated, Files.getLastModifiedTime(file));
+    }
+
+    @Test
+    void findSets_ParallelMatchesSequential() {
+        UtilImpl util = createUtil(3, 5, 1);
+        List<int[]> sets = util.findSets(fullDeck(3, 5), Integer.MAX_VALUE);
+        assertEquals(createUtil(3, 5).findSets(fullDeck(3, 5), Integer.MAX_VALUE).size(), sets.size());
+        assertDistinctLegalSets(util, sets);
+        assertEquals(7, util.findSets(fullDeck(3, 5), 7).size());
+    }
+
+    @Test
+    void streamSets_SequentialAndParallel() {
+        UtilImpl util = createUtil(3, 4);
+        assertEquals(1080, util.streamSets(fullDeck(3, 4)).count());
+        List<int[]> sets = util.streamSets(fullDeck(3, 4)).parallel().collect(Collectors.toList());
+        assertEquals(1080, sets.size());
+        assertDistinctLegalSets(util, sets);
+        assertTrue(util.streamSets(fullDeck(3, 4)).iterator().hasNext());
+
+        // pairs are not searched by completion, but by testing each combination as the stream consumes it
+        UtilImpl pairs = createUtil(2, 4);
+        List<Integer> deck = fullDeck(2, 4);
+        assertEquals(countSetsByCombination(pairs, deck, new int[2], 0, 0), pairs.streamSets(deck).count());
+        assertDistinctLegalSets(pairs, pairs.streamSets(deck).limit(5).collect(Collectors.toList()));
+    }
+
+    @Test
+    void findSets_LargerFeatureSize() {
+        for (int[] variant : new int[][]{{4, 3}, {5, 2}}) {
+            UtilImpl util = createUtil(variant[0], variant[1]);
+            List<Integer> deck = fullDeck(variant[0], variant[1]);
+            List<int[]> sets = util.findSets(deck, Integer.MAX_VALUE);
+            assertEquals(countSetsByCombination(util, deck, new int[variant[0]], 0, 0), sets.size());
+            assertDistinctLegalSets(util, sets);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Checks a batch of set requests, one per player with 3 random tokens on a full 12 slot table, against the number
+ * of ClaimValidator workers (0 to check them on the calling thread). The claims counter gives claims per second.
+ * Run like bguspl.set.UtilImplBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClaimValidatorBenchmark {
+
+    @Param({"16", "256", "1024"})
+    public int claims;
+
+    @Param({"0", "1", "2", "4"})
+    public int workers;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Claims {
+        public long claims;
+    }
+
+    private ClaimValidator validator;
+    private TableSnapshot snapshot;
+    private int[] players;
+    private long[] versions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(claims));
+        properties.put("TableDelaySeconds", "0");
+        properties.put("ClaimValidationThreads", Integer.toString(workers));
+        properties.put("LogLevel", "OFF");
+        Config config = new Config(Logger.getAnonymousLogger(), properties);
+        Env env = new Env(Logger.getAnonymousLogger(), config, new TableTest.MockUserInterface(), new UtilImpl(config));
+
+        Table table = new Table(env);
+        Random random = new Random(0);
+        int[] cards = random.ints(0, config.deckSize).distinct().limit(config.tableSize).toArray();
+        int[] slots = new int[config.tableSize];
+        for (int slot = 0; slot < slots.length; ++slot)
+            slots[slot] = slot;
+        table.placeCards(cards, slots);
+        players = new int[claims];
+        versions = new long[claims];
+        for (int player = 0; player < claims; ++player) {
+            while (table.countTokens(player) < config.featureSize)
+                table.toggleToken(player, random.nextInt(config.tableSize));
+            players[player] = player;
+        }
+        snapshot = table.snapshot();
+        Arrays.fill(versions, snapshot.version);
+        validator = new ClaimValidator(env);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        validator.shutdown();
+    }
+
+    @Benchmark
+    public ClaimValidator.Verdict[] validate(Claims counter) {
+        counter.claims += claims;
+        return validator.validate(snapshot, players, versions);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ClaimValidatorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
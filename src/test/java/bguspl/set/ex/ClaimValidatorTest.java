@@ -0,0 +1,86 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ClaimValidatorTest {
+
+    private static Env createEnv(int players, int threads) {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(players));
+        properties.put("TableDelaySeconds", "0");
+        properties.put("ClaimValidationThreads", Integer.toString(threads));
+        Config config = new Config(Logger.getAnonymousLogger(), properties);
+        return new Env(Logger.getAnonymousLogger(), config, new TableTest.MockUserInterface(), new UtilImpl(config));
+    }
+
+    @Test
+    void validate_StaleAndIncompleteClaimsDoNotMatch() {
+        Env env = createEnv(3, 0);
+        Table table = new Table(env);
+        table.placeCards(new int[]{0, 1, 2, 3}, new int[]{0, 1, 2, 3});
+        for (int slot : new int[]{0, 1, 2})
+            table.toggleToken(0, slot);
+        for (int slot : new int[]{0, 1, 3})
+            table.toggleToken(1, slot);
+        table.toggleToken(2, 3);
+        long version = table.snapshot().version;
+
+        ClaimValidator.Verdict[] verdicts = new ClaimValidator(env).validate(table.snapshot(),
+                new int[]{0, 1, 2}, new long[]{version, version, version});
+        assertArrayEquals(new int[]{0, 1, 2}, verdicts[0].cards);
+        assertEquals(true, verdicts[0].legal);
+        assertEquals(false, verdicts[1].legal);
+        assertNull(verdicts[2].cards);
+
+        table.placeCards(new int[]{4}, new int[]{2});
+        verdicts = new ClaimValidator(env).validate(table.snapshot(), new int[]{0}, new long[]{version});
+        assertNull(verdicts[0].cards);
+    }
+
+    @Test
+    void validate_WorkersMatchTheDealerThread() {
+        int players = 100;
+        Env inline = createEnv(players, 0);
+        Table table = new Table(inline);
+        table.placeCards(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11}, new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11});
+        Random random = new Random(0);
+        int[] claimPlayers = new int[players];
+        long[] versions = new long[players];
+        for (int player = 0; player < players; ++player) {
+            while (table.countTokens(player) < inline.config.featureSize)
+                table.toggleToken(player, random.nextInt(inline.config.tableSize));
+            claimPlayers[player] = player;
+            versions[player] = table.snapshot().version;
+        }
+
+        ClaimValidator.Verdict[] expected = new ClaimValidator(inline).validate(table.snapshot(), claimPlayers, versions);
+        ClaimValidator workers = new ClaimValidator(createEnv(players, 3));
+        ClaimValidator.Verdict[] actual = workers.validate(table.snapshot(), claimPlayers, versions);
+        workers.shutdown();
+        assertSameVerdicts(expected, actual);
+
+        // once shut down, the batch is checked on the calling thread
+        assertSameVerdicts(expected, workers.validate(table.snapshot(), claimPlayers, versions));
+    }
+
+    private static void assertSameVerdicts(ClaimValidator.Verdict[] expected, ClaimValidator.Verdict[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; ++i) {
+            assertArrayEquals(expected[i].slots, actual[i].slots);
+            assertArrayEquals(expected[i].cards, actual[i].cards);
+            assertEquals(expected[i].legal, actual[i].legal);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterface;
+import bguspl.set.Util;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class CountdownTickerTest {
+
+    @Mock
+    private UserInterface ui;
+    @Mock
+    private Util util;
+    @Mock
+    private Logger logger;
+
+    private CountdownTicker createTicker(String turnTimeoutSeconds) {
+        Properties properties = new Properties();
+        properties.put("TurnTimeoutSeconds", turnTimeoutSeconds);
+        properties.put("TurnTimeoutWarningSeconds", "0.1");
+        properties.put("TimerDisplaySeconds", "0.05");
+        properties.put("TimerWarningDisplaySeconds", "0.01");
+        return new CountdownTicker(new Env(logger, new Config(logger, properties), ui, util));
+    }
+
+    @Test
+    void restart_CountsDownToTheDeadline() {
+        CountdownTicker ticker = createTicker("0.3");
+        long now = System.currentTimeMillis();
+        ticker.restart(now, now + 300);
+        verify(ui, timeout(1000).atLeast(3)).setCountdown(anyLong(), eq(false));
+        verify(ui, timeout(1000).atLeast(3)).setCountdown(anyLong(), eq(true));
+        verify(ui, timeout(1000)).setCountdown(0, true);
+        ticker.stop();
+    }
+
+    @Test
+    void restart_ShowsElapsedTimeWithoutCountdown() {
+        CountdownTicker ticker = createTicker("0");
+        ticker.restart(System.currentTimeMillis(), Long.MAX_VALUE);
+        verify(ui, timeout(1000).atLeast(3)).setElapsed(anyLong());
+        ticker.stop();
+    }
+
+    @Test
+    void restart_ShowsNothingWhenTimerIsOff() {
+        CountdownTicker ticker = createTicker("-1");
+        ticker.restart(System.currentTimeMillis(), Long.MAX_VALUE);
+        verify(ui, after(200).never()).setElapsed(anyLong());
+        verify(ui, never()).setCountdown(anyLong(), eq(false));
+        ticker.stop();
+    }
+}
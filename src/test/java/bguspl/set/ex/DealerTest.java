@@ -4,6 +4,7 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,11 +14,18 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
@@ -82,9 +90,187 @@ public class DealerTest {
         int playerId1 = rand.nextInt(5);
         dealer.addSetRequest(playerId0);
         dealer.addSetRequest(playerId1);
-        ArrayDeque<Integer> requests = dealer.getSetRequests();
+        Queue<Integer> requests = dealer.getSetRequests();
         assertEquals(playerId0, requests.poll());
         assertEquals(playerId1, requests.poll());
+        assertEquals(2, dealer.getClaimQueueDepth());
+        assertEquals(2, dealer.getClaimQueuePeak());
     }
 
+    @Test
+    void checkSets_OverlappingClaimsResolvedByVersionThenPlayer() throws Exception {
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        properties.put("PointFreezeSeconds", "1");
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        Table table = new Table(env);
+        Player[] players = {new Player(env, null, table, 0, true), new Player(env, null, table, 1, true)};
+        Dealer dealer = new Dealer(env, table, players);
+        table.placeCards(new int[]{0, 1, 2, 3, 4, 5, 6}, new int[]{0, 1, 2, 3, 4, 5, 6});
+
+        // cards 0, 1, 2 and cards 0, 3, 6 are both sets, sharing card 0 (slot 0)
+        for (int slot : new int[]{0, 3, 6})
+            table.toggleToken(1, slot);
+        for (int slot : new int[]{0, 1, 2})
+            table.toggleToken(0, slot);
+        long version = table.snapshot().version;
+        dealer.addSetRequest(1, version);
+        dealer.addSetRequest(0, version);
+
+        Method checkSets = Dealer.class.getDeclaredMethod("checkSets");
+        checkSets.setAccessible(true);
+        assertEquals(true, checkSets.invoke(dealer));
+        assertEquals(1, players[0].score());
+        assertEquals(0, players[1].score());
+        assertEquals(1000, players[0].penaltySec.get());
+        assertEquals(0, players[1].penaltySec.get());
+        assertEquals(0, dealer.getClaimQueueDepth());
+        assertEquals(3, table.cardAt(3));
+        assertArrayEquals(new int[]{3, 6}, table.getTokens(1));
+    }
+
+    @Test
+    void placeCardsOnTable_DealsASetWithNoCountdown() throws Exception {
+        // the cards left are 0, 1, 2 and 12 more cards, such that 0, 1, 2 is their only set
+        Util setUtil = new UtilImpl(new Config(logger, ""));
+        List<Integer> left = new ArrayList<>(Arrays.asList(0, 1, 2));
+        for (int card = 3; card < 81 && left.size() < 15; card++) {
+            left.add(card);
+            if (setUtil.findSets(left, 2).size() > 1) left.remove(left.size() - 1);
+        }
+        assertEquals(15, left.size());
+
+        for (int seed = 0; seed < 20; seed++) {
+            Properties properties = new Properties();
+            properties.put("TableDelaySeconds", "0");
+            properties.put("TurnTimeoutSeconds", "0");
+            properties.put("RandomSeed", Integer.toString(seed));
+            Config config = new Config(logger, properties);
+            Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+            Table table = new Table(env);
+            Dealer dealer = new Dealer(env, table, new Player[0]);
+
+            Deck deck = (Deck) field("deck").get(dealer);
+            long[] cardsLeft = (long[]) field("cardsLeft").get(dealer);
+            for (int card = 0; card < config.deckSize; card++) {
+                if (!left.contains(card)) {
+                    deck.remove(card);
+                    cardsLeft[card / Long.SIZE] &= ~(1L << card);
+                }
+            }
+            // as run() does, the dealer deals once the oracle has searched the cards left
+            EndGameOracle oracle = (EndGameOracle) field("endGameOracle").get(dealer);
+            oracle.cardsChanged(cardsLeft.clone());
+            while (!oracle.isUpToDate()) Thread.sleep(1);
+
+            Method placeCardsOnTable = Dealer.class.getDeclaredMethod("placeCardsOnTable");
+            placeCardsOnTable.setAccessible(true);
+            placeCardsOnTable.invoke(dealer);
+            assertEquals(12, table.countCards());
+            assertEquals(1, table.countSets());
+            table.stopRendering();
+        }
+    }
+
+    @Test
+    void dealSet_CompletesASetWithTheCardsOnTheTable() throws Exception {
+        // a larger deck, where the sets with the lowest card ids are far from the table's
+        Util setUtil = null;
+        for (int seed = 0; seed < 20; seed++) {
+            Properties properties = new Properties();
+            properties.put("FeatureCount", "6");
+            properties.put("TableDelaySeconds", "0");
+            properties.put("TurnTimeoutSeconds", "0");
+            properties.put("RandomSeed", Integer.toString(seed));
+            Config config = new Config(logger, properties);
+            if (setUtil == null) setUtil = new UtilImpl(config);
+            Env env = new Env(logger, config, new TableTest.MockUserInterface(), setUtil);
+            Table table = new Table(env);
+            Dealer dealer = new Dealer(env, table, new Player[0]);
+            Deck deck = (Deck) field("deck").get(dealer);
+
+            // 11 cards with no set on the table and no pair completed by a low card id, and a single empty slot
+            List<Integer> onTable = new ArrayList<>();
+            for (int card = config.deckSize - 1; onTable.size() < config.tableSize - 1; card--) {
+                boolean fits = true;
+                for (int other : onTable) {
+                    int completion = setUtil.completeSet(new int[]{card, other, 0});
+                    fits &= completion >= config.deckSize / 2 && !onTable.contains(completion);
+                }
+                if (fits) onTable.add(card);
+            }
+            int[] cards = onTable.stream().mapToInt(Integer::intValue).toArray();
+            int[] slots = new int[cards.length];
+            for (int i = 0; i < cards.length; i++) {
+                deck.remove(cards[i]);
+                slots[i] = i;
+            }
+            table.placeCards(cards, slots);
+            assertEquals(0, table.countSets());
+
+            int[] drawn = {deck.draw(new SplittableRandom(-seed - 1))};
+            Method dealSet = Dealer.class.getDeclaredMethod("dealSet", int[].class, int.class);
+            dealSet.setAccessible(true);
+            dealSet.invoke(dealer, drawn, 1);
+            table.placeCard(drawn[0], config.tableSize - 1);
+            assertTrue(table.countSets() > 0);
+            assertEquals(config.deckSize - config.tableSize, deck.size());
+            table.stopRendering();
+        }
+    }
+
+    @Test
+    void reshuffle_SwapsInThePreparedLayoutUnlessCardsChanged() throws Exception {
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        properties.put("TurnTimeoutSeconds", "60");
+        properties.put("RandomSeed", "7");
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, new Player[0]);
+        Method prepareReshuffle = Dealer.class.getDeclaredMethod("prepareReshuffle");
+        prepareReshuffle.setAccessible(true);
+        Method reshuffle = Dealer.class.getDeclaredMethod("reshuffle");
+        reshuffle.setAccessible(true);
+
+        prepareReshuffle.invoke(dealer);
+        CompletableFuture<?> nextLayout = (CompletableFuture<?>) field("nextLayout").get(dealer);
+        Object layout = nextLayout.join();
+        Field layoutCards = layout.getClass().getDeclaredField("cards");
+        layoutCards.setAccessible(true);
+        int[] cards = (int[]) layoutCards.get(layout);
+        reshuffle.invoke(dealer);
+        assertEquals(12, cards.length);
+        for (int slot = 0; slot < cards.length; slot++)
+            assertEquals(cards[slot], table.cardAt(slot));
+        assertEquals(81 - 12, ((Deck) field("deck").get(dealer)).size());
+
+        // a set collected after the layout was drawn makes it stale
+        prepareReshuffle.invoke(dealer);
+        ((CompletableFuture<?>) field("nextLayout").get(dealer)).join();
+        int[] collected = {table.cardAt(0), table.cardAt(1), table.cardAt(2)};
+        Method discardSet = Dealer.class.getDeclaredMethod("discardSet", int[].class);
+        discardSet.setAccessible(true);
+        discardSet.invoke(dealer, (Object) collected);
+        table.removeCards(new int[]{0, 1, 2});
+        reshuffle.invoke(dealer);
+        assertEquals(12, table.countCards());
+        for (int card : collected)
+            assertEquals(Table.EMPTY, table.slotOf(card));
+
+        // a cancelled layout is dealt around as well
+        prepareReshuffle.invoke(dealer);
+        ((CompletableFuture<?>) field("nextLayout").get(dealer)).cancel(false);
+        reshuffle.invoke(dealer);
+        assertEquals(12, table.countCards());
+        table.stopRendering();
+    }
+
+    private static Field field(String name) throws NoSuchFieldException {
+        Field field = Dealer.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
 }
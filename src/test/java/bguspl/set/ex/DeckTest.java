@@ -0,0 +1,56 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckTest {
+
+    private static int[] drawAll(Deck deck, SplittableRandom random) {
+        int[] drawn = new int[deck.size()];
+        for (int i = 0; i < drawn.length; ++i)
+            drawn[i] = deck.draw(random);
+        return drawn;
+    }
+
+    @Test
+    void draw_DrawsEveryCardOnce() {
+        Deck deck = new Deck(81);
+        boolean[] seen = new boolean[81];
+        for (int card : drawAll(deck, new SplittableRandom(1))) {
+            assertFalse(seen[card]);
+            seen[card] = true;
+        }
+        assertTrue(deck.isEmpty());
+
+        deck.add(7);
+        assertEquals(1, deck.size());
+        assertEquals(7, deck.draw(new SplittableRandom(2)));
+    }
+
+    @Test
+    void draw_SameSeedDrawsSameOrder() {
+        assertArrayEquals(drawAll(new Deck(81), new SplittableRandom(42)), drawAll(new Deck(81), new SplittableRandom(42)));
+    }
+
+    @Test
+    void remove_RemovesTheGivenCard() {
+        Deck deck = new Deck(81);
+        deck.remove(0);
+        deck.remove(40);
+        assertFalse(deck.contains(0));
+        assertFalse(deck.contains(40));
+        assertTrue(deck.contains(80));
+        assertEquals(79, deck.size());
+
+        deck.add(40);
+        assertTrue(deck.contains(40));
+        for (int card : drawAll(deck, new SplittableRandom(3)))
+            assertTrue(card != 0);
+    }
+}
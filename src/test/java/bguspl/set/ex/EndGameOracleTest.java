@@ -0,0 +1,61 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterface;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class EndGameOracleTest {
+
+    EndGameOracle oracle;
+    Semaphore answers;
+
+    @Mock
+    private UserInterface ui;
+    @Mock
+    private Logger logger;
+
+    @BeforeEach
+    void setUp() {
+        Config config = new Config(logger, "");
+        Env env = new Env(logger, config, ui, new UtilImpl(config));
+        answers = new Semaphore(0);
+        oracle = new EndGameOracle(env, answers::release);
+    }
+
+    @Test
+    void setsRemainUntilAnswered() {
+        assertTrue(oracle.setsRemain());
+    }
+
+    @Test
+    void noSetsAmongCards() throws InterruptedException {
+        // cards 0, 1 and 4 do not form a set
+        oracle.cardsChanged(new long[]{1L << 0 | 1L << 1 | 1L << 4, 0});
+        assertTrue(answers.tryAcquire(5, TimeUnit.SECONDS));
+        assertTrue(oracle.isUpToDate());
+        assertFalse(oracle.setsRemain());
+    }
+
+    @Test
+    void setAmongCards() throws InterruptedException {
+        oracle.cardsChanged(new long[]{1L << 0 | 1L << 1 | 1L << 4, 0});
+        assertTrue(answers.tryAcquire(5, TimeUnit.SECONDS));
+        oracle.cardsChanged(new long[]{1L << 0 | 1L << 1 | 1L << 2 | 1L << 4, 0});
+        assertTrue(answers.tryAcquire(5, TimeUnit.SECONDS));
+        assertTrue(oracle.setsRemain());
+    }
+}
@@ -0,0 +1,124 @@
+package bguspl.set.ex;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Players toggling tokens on random slots of a 12 slot table against a dealer changing the table, with TableLock
+ * (the dealer replacing a set in slots 2, 5 and 9, or reshuffling the whole table) and with the deprecated Semaphore.
+ * Besides the throughput, the players count the presses they dropped (a Semaphore press fails while the dealer
+ * holds it, a TableLock press only once its wait times out).
+ * Run like bguspl.set.UtilImplBenchmark.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class TableLockBenchmark {
+
+    /**
+     * The work done holding the lock, in Blackhole.consumeCPU tokens.
+     */
+    private static final int PLAYER_WORK = 16;
+    private static final int DEALER_WORK = 256;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Presses {
+        public long dropped;
+    }
+
+    private static final int SLOTS = 12;
+    private static final int[] SET_SLOTS = {2, 5, 9};
+
+    private final TableLock tableLock = new TableLock(SLOTS, 1000);
+    private final Semaphore semaphore = new Semaphore();
+
+    @Benchmark
+    @Group("tableLock")
+    @GroupThreads(3)
+    public void tableLockPlayer(Presses presses) {
+        pressSlot(presses);
+    }
+
+    @Benchmark
+    @Group("tableLock")
+    @GroupThreads(1)
+    public void tableLockDealer() {
+        tableLock.dealerLock(SET_SLOTS);
+        Blackhole.consumeCPU(DEALER_WORK);
+        tableLock.dealerUnlock();
+    }
+
+    @Benchmark
+    @Group("tableLockReshuffle")
+    @GroupThreads(3)
+    public void tableLockReshufflePlayer(Presses presses) {
+        pressSlot(presses);
+    }
+
+    @Benchmark
+    @Group("tableLockReshuffle")
+    @GroupThreads(1)
+    public void tableLockReshuffleDealer() {
+        tableLock.dealerLock();
+        Blackhole.consumeCPU(DEALER_WORK);
+        tableLock.dealerUnlock();
+    }
+
+    private void pressSlot(Presses presses) {
+        int slot = ThreadLocalRandom.current().nextInt(SLOTS);
+        long stamp = tableLock.playerLock(slot);
+        if (stamp == 0) {
+            presses.dropped++;
+            return;
+        }
+        Blackhole.consumeCPU(PLAYER_WORK);
+        tableLock.playerUnlock(slot, stamp);
+    }
+
+    @Benchmark
+    @Group("semaphore")
+    @GroupThreads(3)
+    public void semaphorePlayer(Presses presses) {
+        if (!semaphore.playerTryLock()) {
+            presses.dropped++;
+            return;
+        }
+        Blackhole.consumeCPU(PLAYER_WORK);
+        semaphore.playerUnlock();
+    }
+
+    @Benchmark
+    @Group("semaphore")
+    @GroupThreads(1)
+    public void semaphoreDealer() {
+        semaphore.dealerLock();
+        Blackhole.consumeCPU(DEALER_WORK);
+        semaphore.dealerUnlock();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TableLockBenchmark.class.getSimpleName()).build()).run();
+    }
+}
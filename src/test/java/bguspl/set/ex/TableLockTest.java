@@ -0,0 +1,42 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableLockTest {
+
+    @Test
+    void dealerLock_OnlyBlocksTheSlotsItChanges() throws Exception {
+        TableLock lock = new TableLock(12, 50);
+        lock.dealerLock(new int[]{9, 2, 5});
+        long free = CompletableFuture.supplyAsync(() -> lock.playerLock(3)).get(1, TimeUnit.SECONDS);
+        assertNotEquals(0, free);
+        lock.playerUnlock(3, free);
+        assertEquals(0, (long) CompletableFuture.supplyAsync(() -> lock.playerLock(5)).get(1, TimeUnit.SECONDS));
+        assertEquals(0, lock.optimisticRead(2));
+
+        lock.dealerUnlock();
+        long stamp = lock.playerLock(5);
+        assertNotEquals(0, stamp);
+        lock.playerUnlock(5, stamp);
+    }
+
+    @Test
+    void playerLock_WaitsForTheDealerToFinish() throws Exception {
+        TableLock lock = new TableLock(12, 10_000);
+        lock.dealerLock();
+        CompletableFuture<Long> press = CompletableFuture.supplyAsync(() -> lock.playerLock(0));
+        Thread.sleep(50);
+        assertTrue(!press.isDone());
+        lock.dealerUnlock();
+        long stamp = press.get(1, TimeUnit.SECONDS);
+        assertNotEquals(0, stamp);
+        lock.playerUnlock(0, stamp);
+    }
+}
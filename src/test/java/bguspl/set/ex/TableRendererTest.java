@@ -0,0 +1,86 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterface;
+import bguspl.set.Util;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class TableRendererTest {
+
+    @Mock
+    private UserInterface ui;
+    @Mock
+    private Util util;
+    @Mock
+    private Logger logger;
+
+    private Table createTable(String tableDelaySeconds) {
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", tableDelaySeconds);
+        return new Table(new Env(logger, new Config(logger, properties), ui, util));
+    }
+
+    @Test
+    void changed_ReturnsBeforeTheAnimation() {
+        Table table = createTable("0.2");
+        long start = System.currentTimeMillis();
+        table.placeCard(1, 2);
+        assertTrue(System.currentTimeMillis() - start < 200);
+        assertFalse(table.isShown(2));
+        verify(ui, never()).placeCards(new int[]{1}, new int[]{2});
+
+        table.stopRendering();
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertTrue(table.isShown(2));
+        verify(ui).placeCards(new int[]{1}, new int[]{2});
+    }
+
+    @Test
+    void changed_ShowsTheChangesMadeDuringTheDelayTogether() {
+        Table table = createTable("0.1");
+        table.placeCard(1, 2);
+        table.placeCard(3, 4);
+        table.removeCard(2);
+        table.placeCard(5, 2);
+        table.toggleToken(0, 4);
+        table.stopRendering();
+
+        InOrder order = inOrder(ui);
+        order.verify(ui).placeCards(new int[]{5, 3}, new int[]{2, 4});
+        order.verify(ui).placeToken(0, 4);
+        verify(ui, never()).removeCards(new int[]{2});
+    }
+
+    @Test
+    void changed_RemovesTokensBeforeTheirCards() {
+        Table table = createTable("0.01");
+        table.placeCard(1, 2);
+        table.toggleToken(0, 2);
+        verify(ui, timeout(1000)).placeToken(0, 2);
+
+        table.clearTokens(2);
+        table.removeCard(2);
+        table.stopRendering();
+        assertTrue(table.isShown(2));
+
+        InOrder order = inOrder(ui);
+        order.verify(ui).removeToken(0, 2);
+        order.verify(ui).removeCards(new int[]{2});
+    }
+}
@@ -4,21 +4,26 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private AtomicIntegerArray slotToCard;
+    private AtomicIntegerArray cardToSlot;
+    private Config config;
+    private MockLogger logger;
 
     @BeforeEach
     void setUp() {
@@ -31,39 +36,47 @@ class TableTest {
         properties.put("TableDelaySeconds", "0");
         properties.put("PlayerKeys1", "81,87,69,82");
         properties.put("PlayerKeys2", "85,73,79,80");
+        properties.put("ComputerPlayers", "3");
 
-        MockLogger logger = new MockLogger();
-        Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        logger = new MockLogger();
+        config = new Config(logger, properties);
+        slotToCard = emptyArray(config.tableSize);
+        cardToSlot = emptyArray(config.deckSize);
 
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
-        for (int i=0; i<5; i++)
-            table.playersTokens.add(new ArrayList<Integer>());
+    }
+
+    private static AtomicIntegerArray emptyArray(int length) {
+        AtomicIntegerArray array = new AtomicIntegerArray(length);
+        for (int i = 0; i < length; ++i)
+            array.set(i, Table.EMPTY);
+        return array;
     }
 
     private int fillSomeSlots() {
-        slotToCard[1] = 3;
-        slotToCard[2] = 5;
-        cardToSlot[3] = 1;
-        cardToSlot[5] = 2;
+        slotToCard.set(1, 3);
+        slotToCard.set(2, 5);
+        cardToSlot.set(3, 1);
+        cardToSlot.set(5, 2);
 
         return 2;
     }
 
     private void fillAllSlots() {
-        for (int i = 0; i < slotToCard.length; ++i) {
-            slotToCard[i] = i;
-            cardToSlot[i] = i;
+        for (int i = 0; i < slotToCard.length(); ++i) {
+            slotToCard.set(i, i);
+            cardToSlot.set(i, i);
         }
     }
 
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard.get(2));
+        assertEquals(2, cardToSlot.get(8));
+        assertEquals(8, table.cardAt(2));
+        assertEquals(2, table.slotOf(8));
     }
 
     @Test
@@ -81,7 +94,7 @@ class TableTest {
     void countCards_AllSlotsAreFilled() {
 
         fillAllSlots();
-        assertEquals(slotToCard.length, table.countCards());
+        assertEquals(slotToCard.length(), table.countCards());
     }
 
     @Test
@@ -103,9 +116,10 @@ class TableTest {
         table.toggleToken(1,3);
         table.toggleToken(2,3);
         table.toggleToken(2,0);
-        assertEquals(table.playersTokens.get(1).size(), 2);
-        assertEquals(table.playersTokens.get(2).size(), 2);
-        assertEquals(table.playersTokens.get(3).size(), 0);
+        assertEquals(table.countTokens(1), 2);
+        assertEquals(table.countTokens(2), 2);
+        assertEquals(table.countTokens(3), 0);
+        assertArrayEquals(new int[]{0, 3}, table.getTokens(2));
     }
 
     @Test
@@ -114,8 +128,92 @@ class TableTest {
         table.toggleToken(1,2);
         table.toggleToken(2,3);
         table.toggleToken(2,0);
-        assertEquals(table.playersTokens.get(1).size(), 0);
-        assertEquals(table.playersTokens.get(2).size(), 2);
+        assertEquals(table.countTokens(1), 0);
+        assertEquals(table.countTokens(2), 2);
+    }
+
+    @Test
+    void toggleToken_StopsAtFeatureSize() {
+        assertEquals(false, table.toggleToken(4, 0));
+        assertEquals(false, table.toggleToken(4, 1));
+        assertEquals(true, table.toggleToken(4, 2));
+        assertEquals(false, table.toggleToken(4, 3));
+        assertArrayEquals(new int[]{0, 1, 2}, table.getTokens(4));
+    }
+
+    @Test
+    void clearTokens_RemovesEveryPlayersTokenFromTheSlot() {
+        table.toggleToken(0, 1);
+        table.toggleToken(3, 1);
+        table.toggleToken(3, 2);
+        table.clearTokens(1);
+        assertEquals(0, table.countTokens(0));
+        assertArrayEquals(new int[]{2}, table.getTokens(3));
+        // the slot's players are cleared too, so toggling again places a token
+        table.toggleToken(0, 1);
+        assertArrayEquals(new int[]{1}, table.getTokens(0));
+    }
+
+    @Test
+    void placeCards_PlacesAndRemovesTheWholeBatch() {
+        fillSomeSlots();
+        table.placeCards(new int[]{8, 9, 10}, new int[]{0, 2, 3});
+        assertEquals(8, table.cardAt(0));
+        assertEquals(3, table.cardAt(1));
+        assertEquals(9, table.cardAt(2));
+        assertEquals(2, table.slotOf(9));
+        assertEquals(Table.EMPTY, table.slotOf(5));
+        assertEquals(4, table.countCards());
+
+        table.removeCards(new int[]{1, 2});
+        assertEquals(Table.EMPTY, table.cardAt(1));
+        assertEquals(Table.EMPTY, table.slotOf(3));
+        assertEquals(Table.EMPTY, table.slotOf(9));
+        assertEquals(2, table.countCards());
+    }
+
+    @Test
+    void snapshot_IsImmutableAndVersioned() {
+        TableSnapshot empty = table.snapshot();
+        table.placeCards(new int[]{8, 9, 10}, new int[]{0, 1, 2});
+        table.toggleToken(3, 1);
+        TableSnapshot placed = table.snapshot();
+        assertEquals(Table.EMPTY, empty.cardAt(0));
+        assertEquals(0, empty.getTokens(3).length);
+        assertEquals(9, placed.cardAt(1));
+        assertEquals(3, placed.countCards());
+        assertArrayEquals(new int[]{1}, placed.getTokens(3));
+        assertEquals(empty.version + 2, placed.version);
+
+        table.removeCards(new int[]{2});
+        TableSnapshot removed = table.snapshot();
+        assertEquals(10, placed.cardAt(2));
+        assertEquals(Table.EMPTY, removed.cardAt(2));
+        assertEquals(true, removed.isUnchangedSince(new int[]{0, 1}, placed.version));
+        assertEquals(false, removed.isUnchangedSince(new int[]{1, 2}, placed.version));
+
+        // a token toggled while the dealer is midway through a batch does not publish the batch's cards
+        slotToCard.set(0, 11);
+        table.toggleToken(3, 1);
+        assertEquals(8, table.snapshot().cardAt(0));
+        assertEquals(removed.version + 1, table.snapshot().version);
+    }
+
+    @Test
+    void countSets_FollowsPlacedAndRemovedCards() {
+        Table realTable = new Table(new Env(logger, config, new MockUserInterface(), new UtilImpl(config)));
+        // cards 0, 1, 2 differ only in the last feature, so they form a set; card 4 forms none with them
+        realTable.placeCard(0, 0);
+        realTable.placeCard(1, 1);
+        realTable.placeCard(4, 3);
+        assertEquals(0, realTable.countSets());
+        realTable.placeCard(2, 2);
+        assertEquals(1, realTable.countSets());
+        assertArrayEquals(new int[]{0, 1, 2}, realTable.anySet());
+        realTable.removeCard(1);
+        assertEquals(0, realTable.countSets());
+        assertEquals(Table.EMPTY, realTable.cardAt(1));
+        assertEquals(Table.EMPTY, realTable.slotOf(1));
     }
 
     static class MockUserInterface implements UserInterface {
@@ -161,11 +259,41 @@ class TableTest {
             return false;
         }
 
+        @Override
+        public long[] testSets(int[] cards, int count) {
+            return new long[0];
+        }
+
+        @Override
+        public int completeSet(int[] cards) {
+            return -1;
+        }
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
 
+        @Override
+        public List<int[]> findSets(int[] cards, int offset, int length, int count) {
+            return null;
+        }
+
+        @Override
+        public List<int[]> findSets(long[] cards, int count) {
+            return null;
+        }
+
+        @Override
+        public int findSets(int[] cards, int offset, int length, SetSink sink) {
+            return 0;
+        }
+
+        @Override
+        public Stream<int[]> streamSets(List<Integer> deck) {
+            return Stream.empty();
+        }
+
         @Override
         public void spin() {}
     }
@@ -175,4 +303,5 @@ class TableTest {
             super("", null);
         }
     }
+
 }